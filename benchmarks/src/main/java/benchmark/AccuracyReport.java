@@ -0,0 +1,364 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+
+import logic.DetectedStone;
+import logic.ImageHandler;
+
+/**
+ * Accuracy and latency regression check of the detection pipeline.
+ * Runs target and token detection on every annotated image of ImagesTest,
+ * compares the results with the ground truth and writes two CSV reports:
+ * one line per image, and one summary line per image set (clean, ombre, all).
+ * When a previous summary is given, exits with status 1 if any set got worse.
+ *
+ * Usage: AccuracyReport [imagesDir] [report.csv] [baseline-summary.csv]
+ */
+public class AccuracyReport {
+	private static final String[] SETS = { "clean", "ombre", "all" };
+
+	// Increase of the mean errors tolerated before reporting a regression, in pixels
+	private static final double ERROR_MARGIN = 1.0;
+	// Rates are written with four decimals
+	private static final double RATE_MARGIN = 1e-3;
+
+	/**
+	 * Detection results of one image.
+	 */
+	private static class ImageResult {
+		String image;
+		String set;
+		double targetError;
+		boolean targetFound;
+		int stonesExpected;
+		int stonesMatched;
+		int falsePositives;
+		double stoneErrorSum;
+		boolean tokenCorrect;
+		double targetMillis;
+		double tokenMillis;
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args Optional images directory, report path and baseline summary path
+	 * @throws IOException if the ground truth or a report cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		String imagesDir = args.length > 0 ? args[0] : "ImagesTest";
+		Path report = Paths.get(args.length > 1 ? args[1] : "accuracy-report.csv");
+		Path baseline = args.length > 2 ? Paths.get(args[2]) : null;
+
+		GroundTruth truth = GroundTruth.load(Paths.get(imagesDir, "ground_truth.csv"));
+		FrameSet frames = new FrameSet(imagesDir, "all");
+		ImageHandler handler = new ImageHandler();
+		double tolerance = ImageHandler.getTokenRadius() / 2;
+
+		// First pass so the timed pass does not include JIT compilation and buffer allocation
+		for (Mat frame : frames.getFrames()) {
+			detect(handler, frame);
+		}
+
+		List<ImageResult> results = new ArrayList<>();
+		for (int i = 0; i < frames.getFrames().size(); i++) {
+			String name = frames.getNames().get(i);
+			if (!truth.contains(name)) {
+				System.out.println("No ground truth for " + name + ", skipped");
+				continue;
+			}
+			results.add(score(handler, frames.getFrames().get(i), name, truth, tolerance));
+		}
+		frames.release();
+		ImageHandler.releaseResources();
+
+		writeImages(report, results);
+		Map<String, Map<String, Double>> summary = summarize(results);
+		Path summaryPath = summaryPath(report);
+		writeSummary(summaryPath, summary);
+		for (Map.Entry<String, Map<String, Double>> set : summary.entrySet()) {
+			System.out.println(set.getKey() + ": " + set.getValue());
+		}
+		System.out.println("Reports written to " + report + " and " + summaryPath);
+
+		if (baseline != null) {
+			List<String> regressions = compare(readSummary(baseline), summary);
+			for (String regression : regressions) {
+				System.out.println("REGRESSION " + regression);
+			}
+			if (!regressions.isEmpty()) {
+				System.exit(1);
+			}
+			System.out.println("No regression against " + baseline);
+		}
+	}
+
+	/**
+	 * Runs the detection as the game does: target first, then stones around it.
+	 *
+	 * @param handler Detector
+	 * @param frame   Image to process
+	 * @return Stones found
+	 */
+	private static List<DetectedStone> detect(ImageHandler handler, Mat frame) {
+		ImageHandler.setTargetPosition(ImageHandler.getTargetPosition(frame));
+		ImageHandler.getMotionGate().invalidate();
+		handler.getTokenPosition(frame);
+		return handler.getStonePositions(frame);
+	}
+
+	/**
+	 * Detects the target and stones of one image and scores them.
+	 *
+	 * @param handler   Detector
+	 * @param frame     Image to process
+	 * @param name      File name of the image
+	 * @param truth     Annotations
+	 * @param tolerance Distance under which a detection matches an annotation, in pixels
+	 * @return Score and timings of the image
+	 */
+	private static ImageResult score(ImageHandler handler, Mat frame, String name, GroundTruth truth,
+			double tolerance) {
+		ImageResult result = new ImageResult();
+		result.image = name;
+		result.set = name.contains("ombre") ? "ombre" : "clean";
+
+		long start = System.nanoTime();
+		int[] target = ImageHandler.getTargetPosition(frame);
+		result.targetMillis = (System.nanoTime() - start) / 1e6;
+		ImageHandler.setTargetPosition(target);
+		result.targetError = distance(target, truth.getTarget(name));
+		result.targetFound = result.targetError <= tolerance;
+
+		// Measure the detection itself, not the motion gate cache
+		ImageHandler.getMotionGate().invalidate();
+		start = System.nanoTime();
+		int[] token = handler.getTokenPosition(frame);
+		result.tokenMillis = (System.nanoTime() - start) / 1e6;
+		// Same frame, answered by the motion gate from the detection above
+		List<DetectedStone> stones = handler.getStonePositions(frame);
+
+		List<double[]> expected = new ArrayList<>(truth.getStones(name));
+		result.stonesExpected = expected.size();
+		for (DetectedStone stone : stones) {
+			double[] nearest = null;
+			for (double[] position : expected) {
+				if (nearest == null || distance(stone, position) < distance(stone, nearest)) {
+					nearest = position;
+				}
+			}
+			if (nearest != null && distance(stone, nearest) <= tolerance) {
+				result.stonesMatched++;
+				result.stoneErrorSum += distance(stone, nearest);
+				expected.remove(nearest);
+			} else {
+				result.falsePositives++;
+			}
+		}
+
+		if (token == null) {
+			result.tokenCorrect = truth.getStones(name).isEmpty();
+		} else {
+			for (double[] position : truth.getStones(name)) {
+				if (distance(token, position) <= tolerance) {
+					result.tokenCorrect = true;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates the distance between a detection and an annotation.
+	 *
+	 * @param detected Detected position, may be null
+	 * @param expected Annotated position
+	 * @return Distance in pixels, infinite if nothing was detected
+	 */
+	private static double distance(int[] detected, double[] expected) {
+		if (detected == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Math.hypot(detected[0] - expected[0], detected[1] - expected[1]);
+	}
+
+	/**
+	 * Calculates the distance between a detected stone and an annotation,
+	 * keeping the sub-pixel precision of both.
+	 *
+	 * @param stone    Detected stone
+	 * @param expected Annotated position
+	 * @return Distance in pixels
+	 */
+	private static double distance(DetectedStone stone, double[] expected) {
+		return Math.hypot(stone.getX() - expected[0], stone.getY() - expected[1]);
+	}
+
+	/**
+	 * Aggregates the image results per set.
+	 *
+	 * @param results Image results
+	 * @return Metrics by name, for each set
+	 */
+	private static Map<String, Map<String, Double>> summarize(List<ImageResult> results) {
+		Map<String, Map<String, Double>> summary = new LinkedHashMap<>();
+		for (String set : SETS) {
+			int images = 0;
+			int targetMisses = 0;
+			double targetErrorSum = 0;
+			int expected = 0;
+			int matched = 0;
+			int falsePositives = 0;
+			double stoneErrorSum = 0;
+			int tokenCorrect = 0;
+			double targetMillis = 0;
+			double tokenMillis = 0;
+			double tokenMillisMax = 0;
+			for (ImageResult result : results) {
+				if (!set.equals("all") && !set.equals(result.set)) {
+					continue;
+				}
+				images++;
+				if (result.targetFound) {
+					targetErrorSum += result.targetError;
+				} else {
+					targetMisses++;
+				}
+				expected += result.stonesExpected;
+				matched += result.stonesMatched;
+				falsePositives += result.falsePositives;
+				stoneErrorSum += result.stoneErrorSum;
+				tokenCorrect += result.tokenCorrect ? 1 : 0;
+				targetMillis += result.targetMillis;
+				tokenMillis += result.tokenMillis;
+				tokenMillisMax = Math.max(tokenMillisMax, result.tokenMillis);
+			}
+			if (images == 0) {
+				continue;
+			}
+			Map<String, Double> metrics = new LinkedHashMap<>();
+			metrics.put("images", (double) images);
+			metrics.put("target_misses", (double) targetMisses);
+			metrics.put("target_mean_error", images > targetMisses ? targetErrorSum / (images - targetMisses) : 0);
+			metrics.put("stones", (double) expected);
+			metrics.put("stone_miss_rate", expected > 0 ? (expected - matched) / (double) expected : 0);
+			metrics.put("false_positives", (double) falsePositives);
+			metrics.put("stone_mean_error", matched > 0 ? stoneErrorSum / matched : 0);
+			metrics.put("token_accuracy", tokenCorrect / (double) images);
+			metrics.put("target_ms_mean", targetMillis / images);
+			metrics.put("token_ms_mean", tokenMillis / images);
+			metrics.put("token_ms_max", tokenMillisMax);
+			summary.put(set, metrics);
+		}
+		return summary;
+	}
+
+	/**
+	 * Lists the metrics of the current run that are worse than the baseline.
+	 * Latencies are reported but not checked, they depend on the machine.
+	 *
+	 * @param baseline Summary of a previous run
+	 * @param current  Summary of this run
+	 * @return Description of each regression, empty if none
+	 */
+	private static List<String> compare(Map<String, Map<String, Double>> baseline,
+			Map<String, Map<String, Double>> current) {
+		List<String> regressions = new ArrayList<>();
+		for (Map.Entry<String, Map<String, Double>> set : current.entrySet()) {
+			Map<String, Double> before = baseline.get(set.getKey());
+			if (before == null) {
+				continue;
+			}
+			Map<String, Double> after = set.getValue();
+			checkIncrease(regressions, set.getKey(), "target_misses", before, after, 0);
+			checkIncrease(regressions, set.getKey(), "stone_miss_rate", before, after, RATE_MARGIN);
+			checkIncrease(regressions, set.getKey(), "false_positives", before, after, 0);
+			checkIncrease(regressions, set.getKey(), "target_mean_error", before, after, ERROR_MARGIN);
+			checkIncrease(regressions, set.getKey(), "stone_mean_error", before, after, ERROR_MARGIN);
+			Double accuracyBefore = before.get("token_accuracy");
+			if (accuracyBefore != null && after.get("token_accuracy") < accuracyBefore - RATE_MARGIN) {
+				regressions.add(set.getKey() + " token_accuracy " + accuracyBefore + " -> " + after.get("token_accuracy"));
+			}
+		}
+		return regressions;
+	}
+
+	private static void checkIncrease(List<String> regressions, String set, String metric, Map<String, Double> before,
+			Map<String, Double> after, double margin) {
+		Double value = before.get(metric);
+		if (value != null && after.get(metric) > value + margin) {
+			regressions.add(set + " " + metric + " " + value + " -> " + after.get(metric));
+		}
+	}
+
+	/**
+	 * Derives the summary file name from the report file name.
+	 *
+	 * @param report Path of the per-image report
+	 * @return Path of the summary, "-summary" added before the extension
+	 */
+	private static Path summaryPath(Path report) {
+		String name = report.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String summary = dot < 0 ? name + "-summary" : name.substring(0, dot) + "-summary" + name.substring(dot);
+		return report.resolveSibling(summary);
+	}
+
+	private static void writeImages(Path report, List<ImageResult> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+			out.println("image,set,target_error,target_found,stones,stones_matched,false_positives,"
+					+ "stone_mean_error,token_correct,target_ms,token_ms");
+			for (ImageResult result : results) {
+				out.println(String.format(Locale.ROOT, "%s,%s,%.2f,%b,%d,%d,%d,%.2f,%b,%.3f,%.3f", result.image,
+						result.set, result.targetError, result.targetFound, result.stonesExpected,
+						result.stonesMatched, result.falsePositives,
+						result.stonesMatched > 0 ? result.stoneErrorSum / result.stonesMatched : 0,
+						result.tokenCorrect, result.targetMillis, result.tokenMillis));
+			}
+		}
+	}
+
+	private static void writeSummary(Path path, Map<String, Map<String, Double>> summary) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+			boolean header = true;
+			for (Map.Entry<String, Map<String, Double>> set : summary.entrySet()) {
+				if (header) {
+					out.println("set," + String.join(",", set.getValue().keySet()));
+					header = false;
+				}
+				StringBuilder line = new StringBuilder(set.getKey());
+				for (double value : set.getValue().values()) {
+					line.append(String.format(Locale.ROOT, ",%.4f", value));
+				}
+				out.println(line);
+			}
+		}
+	}
+
+	private static Map<String, Map<String, Double>> readSummary(Path path) throws IOException {
+		Map<String, Map<String, Double>> summary = new HashMap<>();
+		List<String> lines = Files.readAllLines(path);
+		String[] names = lines.get(0).split(",");
+		for (String line : lines.subList(1, lines.size())) {
+			String[] fields = line.split(",");
+			Map<String, Double> metrics = new HashMap<>();
+			for (int i = 1; i < fields.length && i < names.length; i++) {
+				metrics.put(names[i], Double.parseDouble(fields[i]));
+			}
+			summary.put(fields[0], metrics);
+		}
+		return summary;
+	}
+}
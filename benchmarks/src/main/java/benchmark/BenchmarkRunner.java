@@ -0,0 +1,35 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * Runs the detection benchmarks in throughput and average time modes with the
+ * GC profiler, which reports the allocation rate of each benchmark.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Optional regular expression selecting the benchmarks to run
+	 * @throws RunnerException if JMH fails to run the benchmarks
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : DetectionBenchmark.class.getSimpleName();
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class);
+
+		// Forked JVMs need the OpenCV native library as well
+		String libraryPath = System.getProperty("java.library.path");
+		if (libraryPath != null) {
+			options.jvmArgsAppend("-Djava.library.path=" + libraryPath);
+		}
+		new Runner(options.build()).run();
+	}
+}
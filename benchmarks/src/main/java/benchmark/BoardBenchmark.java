@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import logic.Board;
+
+/**
+ * Benchmarks of the board of an end: playing a whole end, with the scoring
+ * and collision checks Gameplay runs after each stone. Pure Java, no OpenCV.
+ * Select it with the argument BoardBenchmark of the benchmarks jar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	/** Stones per end: a regular end, and the practice mode */
+	@Param({ "8", "64" })
+	public int stones;
+
+	private Board board;
+	private double[] xs;
+	private double[] ys;
+	private int[] collisions;
+	private final double buttonX = 640;
+	private final double buttonY = 360;
+
+	@Setup
+	public void setup() {
+		board = new Board(stones);
+		xs = new double[stones];
+		ys = new double[stones];
+		collisions = new int[stones];
+		Random random = new Random(42);
+		for (int i = 0; i < stones; i++) {
+			xs[i] = buttonX + random.nextGaussian() * 150;
+			ys[i] = buttonY + random.nextGaussian() * 150;
+		}
+	}
+
+	@Benchmark
+	public int playEnd() {
+		board.clear();
+		int advantage = 0;
+		for (int turn = 0; turn < stones; turn++) {
+			board.place(turn, xs[turn], ys[turn], turn % 2, Math.hypot(xs[turn] - buttonX, ys[turn] - buttonY), 1);
+			int hits = Math.min(board.findCollisions(turn, 24, collisions), collisions.length);
+			for (int k = 0; k < hits; k++) {
+				board.remove(collisions[k]);
+			}
+			int closest = board.nearest(buttonX, buttonY, -1);
+			if (closest != -1) {
+				advantage += board.nearest(buttonX, buttonY, 1 - closest % 2);
+			}
+		}
+		return advantage;
+	}
+}
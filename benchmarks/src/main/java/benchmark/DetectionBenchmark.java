@@ -0,0 +1,123 @@
+package benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import logic.ImageHandler;
+import view.MatImageConverter;
+
+/**
+ * Benchmarks of the detection and display pipeline on the ImagesTest frames.
+ * Runs headless: only OpenCV and plain Java code is exercised, the JavaFX
+ * toolkit is never started. Must be run from the project root so the
+ * ImagesTest directory and the token images are found.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+	/** Directory of the corpus, relative to the working directory */
+	@Param("ImagesTest")
+	public String imagesDir;
+
+	/** Image set: clean frames or frames with shadows */
+	@Param({ "clean", "ombre" })
+	public String set;
+
+	/** Whether token detection is restricted to the region around the target */
+	@Param({ "true", "false" })
+	public boolean detectionRegion;
+
+	private FrameSet frames;
+	private int[][] targets;
+	private ImageHandler handler;
+	private MatImageConverter converter;
+	private Mat canvas;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (!new File("curlingJ1.png").exists() || !new File("curlingJ2.png").exists()) {
+			throw new IllegalStateException("Run the benchmarks from the project root (token images not found)");
+		}
+		frames = new FrameSet(imagesDir, set);
+		handler = new ImageHandler();
+		ImageHandler.setDetectionRegionEnabled(detectionRegion);
+		converter = new MatImageConverter();
+		canvas = new Mat();
+
+		// Target of each frame, so token detection can use the detection region
+		targets = new int[frames.getFrames().size()][];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = ImageHandler.getTargetPosition(frames.getFrames().get(i));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		frames.release();
+		canvas.release();
+		ImageHandler.releaseResources();
+	}
+
+	@Benchmark
+	public int[] targetPosition() {
+		return ImageHandler.getTargetPosition(frames.next());
+	}
+
+	@Benchmark
+	public int[] targetPositionFullFrame() {
+		// Single-scale search over the whole frame, the reference of the coarse-to-fine search
+		ImageHandler.setCoarseTargetSearch(false);
+		try {
+			return ImageHandler.getTargetPosition(frames.next());
+		} finally {
+			ImageHandler.setCoarseTargetSearch(true);
+		}
+	}
+
+	@Benchmark
+	public int[] tokenPosition() {
+		ImageHandler.setTargetPosition(targets[frames.nextIndex()]);
+		// Measure the detection itself, not the motion gate cache
+		ImageHandler.getMotionGate().invalidate();
+		return handler.getTokenPosition(frames.next());
+	}
+
+	@Benchmark
+	public byte[] matToImage() {
+		return converter.pack(frames.next());
+	}
+
+	@Benchmark
+	public Mat drawTokens() {
+		frames.next().copyTo(canvas);
+		// A full end: four stones per player around the house
+		for (int k = 0; k < 8; k++) {
+			int[] position = { 440 + 120 * (k % 4), 240 + 240 * (k / 4) };
+			if (k % 2 == 0) {
+				ImageHandler.drawTokenPlayer1(canvas, position);
+			} else {
+				ImageHandler.drawTokenPlayer2(canvas, position);
+			}
+		}
+		return canvas;
+	}
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Frames of the ImagesTest corpus loaded in memory for the benchmarks.
+ * Cycles through the frames so consecutive calls never see the same image.
+ */
+public class FrameSet {
+	private final List<Mat> frames = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	private int next;
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Loads every image of a set from the corpus directory.
+	 *
+	 * @param directory Directory holding the Image_clean_* and Image_ombre_* files
+	 * @param set       "clean", "ombre", or "all" for both sets
+	 * @throws IllegalStateException if no image of the set can be loaded
+	 */
+	public FrameSet(String directory, String set) {
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			throw new IllegalStateException("Image directory not found: " + new File(directory).getAbsolutePath());
+		}
+		Arrays.sort(files);
+		String prefix = "all".equals(set) ? "Image_" : "Image_" + set + "_";
+		for (File file : files) {
+			if (file.getName().startsWith(prefix) && file.getName().endsWith(".jpg")) {
+				Mat frame = Imgcodecs.imread(file.getPath());
+				if (!frame.empty()) {
+					frames.add(frame);
+					names.add(file.getName());
+				}
+			}
+		}
+		if (frames.isEmpty()) {
+			throw new IllegalStateException("No '" + set + "' image found in " + new File(directory).getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Returns the next frame of the set, wrapping around at the end.
+	 *
+	 * @return Frame shared with the set, must not be modified
+	 */
+	public Mat next() {
+		Mat frame = frames.get(next);
+		next = (next + 1) % frames.size();
+		return frame;
+	}
+
+	/**
+	 * Returns the index the next call to {@link #next()} will use.
+	 *
+	 * @return Index of the next frame
+	 */
+	public int nextIndex() {
+		return next;
+	}
+
+	/**
+	 * Returns all frames of the set.
+	 *
+	 * @return Frames in file name order
+	 */
+	public List<Mat> getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the file names of the frames.
+	 *
+	 * @return File names in the same order as the frames
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Releases the native memory of all frames.
+	 */
+	public void release() {
+		for (Mat frame : frames) {
+			frame.release();
+		}
+		frames.clear();
+		names.clear();
+	}
+}
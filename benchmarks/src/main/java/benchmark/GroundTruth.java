@@ -0,0 +1,90 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Annotations of the ImagesTest frames, read from ImagesTest/ground_truth.csv:
+ * the target centre and the centre of every stone on the sheet for each image.
+ * The centres come from ellipse fits on the ring and coin edges, made
+ * independently of the detector, to a tenth of a pixel.
+ */
+public class GroundTruth {
+	private final Map<String, double[]> targets = new HashMap<>();
+	private final Map<String, List<double[]>> stones = new HashMap<>();
+
+	/**
+	 * Reads an annotation file.
+	 * Lines are "image,kind,x,y" with kind "target" or "stone"; blank lines,
+	 * lines starting with # and the header are ignored.
+	 *
+	 * @param file Path of the CSV file
+	 * @return The annotations
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	public static GroundTruth load(Path file) throws IOException {
+		GroundTruth truth = new GroundTruth();
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(file)) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#") || line.startsWith("image,")) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			if (fields.length != 4) {
+				throw new IllegalArgumentException(file + ":" + lineNumber + ": expected image,kind,x,y");
+			}
+			String image = fields[0].trim();
+			double[] position = { Double.parseDouble(fields[2].trim()), Double.parseDouble(fields[3].trim()) };
+			switch (fields[1].trim()) {
+			case "target":
+				truth.targets.put(image, position);
+				break;
+			case "stone":
+				truth.stones.computeIfAbsent(image, k -> new ArrayList<>()).add(position);
+				break;
+			default:
+				throw new IllegalArgumentException(file + ":" + lineNumber + ": unknown kind " + fields[1]);
+			}
+		}
+		return truth;
+	}
+
+	/**
+	 * Checks whether an image is annotated.
+	 *
+	 * @param image File name of the image
+	 * @return true if the target of the image is known
+	 */
+	public boolean contains(String image) {
+		return targets.containsKey(image);
+	}
+
+	/**
+	 * Gets the annotated target centre of an image.
+	 *
+	 * @param image File name of the image
+	 * @return Target centre [x,y], or null if the image is not annotated
+	 */
+	public double[] getTarget(String image) {
+		return targets.get(image);
+	}
+
+	/**
+	 * Gets the annotated stone centres of an image.
+	 *
+	 * @param image File name of the image
+	 * @return Stone centres [x,y], empty if the sheet is empty
+	 */
+	public List<double[]> getStones(String image) {
+		return stones.getOrDefault(image, Collections.emptyList());
+	}
+}
@@ -0,0 +1,201 @@
+package logic;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Per-pixel model of the empty sheet used to segment the stones.
+ * Holds the running mean and variance of every pixel, learned from frames of
+ * the empty sheet during calibration and then updated slowly between throws.
+ * A pixel belongs to the foreground when it differs from the mean by more
+ * than a few standard deviations and by more than a fraction of the sheet
+ * brightness, so a stone in the shade is found as well as in the light.
+ * This takes one subtraction and one comparison instead of the color range
+ * filtering.
+ */
+public class BackgroundModel {
+	private static final int MIN_FRAMES = 10; // calibration frames before the model is used
+
+	private final Mat mean = new Mat(); // CV_32FC3
+	private final Mat meanSquares = new Mat(); // CV_32FC3
+	private final Mat mean8 = new Mat(); // CV_8UC3, subtracted from the frames
+	private final Mat threshold8 = new Mat(); // CV_8UC1, per-pixel foreground threshold
+	private final Mat frame32 = new Mat();
+	private final Mat squares32 = new Mat();
+	private final Mat variance = new Mat();
+	private final Mat brightness = new Mat();
+	private final Mat difference = new Mat();
+	private final Mat background = new Mat();
+	private int learnedFrames;
+
+	private double sensitivity = 4.0; // standard deviations of a foreground pixel
+	private double minThreshold = 8; // gray levels, floor of the threshold
+	private double relativeThreshold = 0.12; // fraction of the sheet brightness
+	private double learningRate = 0.02; // weight of a new frame once the model is ready
+
+	/**
+	 * Forgets the model, for instance after the camera exposure changed.
+	 */
+	public synchronized void reset() {
+		learnedFrames = 0;
+		mean.release();
+		meanSquares.release();
+		mean8.release();
+		threshold8.release();
+	}
+
+	/**
+	 * Adds a frame of the empty sheet to the model.
+	 * Calibration frames are averaged with equal weights.
+	 *
+	 * @param frame BGR frame with no stone on the sheet
+	 */
+	public synchronized void learn(Mat frame) {
+		if (!mean.empty() && (frame.cols() != mean.cols() || frame.rows() != mean.rows())) {
+			reset();
+		}
+		accumulate(frame, 1.0 / (learnedFrames + 1), null);
+		learnedFrames++;
+	}
+
+	/**
+	 * Slowly blends a frame of the empty sheet into the model, so it follows
+	 * lighting changes during the game. Pixels currently seen as foreground
+	 * (a hand, a stone missed by the detection) are left out.
+	 *
+	 * @param frame BGR frame with no stone on the sheet
+	 */
+	public synchronized void update(Mat frame) {
+		if (!isReady() || frame.cols() != mean.cols() || frame.rows() != mean.rows()) {
+			return;
+		}
+		foreground(frame, null, difference, background);
+		Core.bitwise_not(background, background);
+		accumulate(frame, learningRate, background);
+	}
+
+	/**
+	 * Blends a frame into the running mean and mean of squares, then rebuilds
+	 * the 8-bit mean and the threshold map used for segmentation.
+	 *
+	 * @param frame BGR frame
+	 * @param alpha Weight of the frame
+	 * @param mask  Pixels to update, or null for all
+	 */
+	private void accumulate(Mat frame, double alpha, Mat mask) {
+		frame.convertTo(frame32, CvType.CV_32FC3);
+		Core.multiply(frame32, frame32, squares32);
+		if (mean.empty()) {
+			frame32.copyTo(mean);
+			squares32.copyTo(meanSquares);
+		} else if (mask == null) {
+			Imgproc.accumulateWeighted(frame32, mean, alpha);
+			Imgproc.accumulateWeighted(squares32, meanSquares, alpha);
+		} else {
+			Imgproc.accumulateWeighted(frame32, mean, alpha, mask);
+			Imgproc.accumulateWeighted(squares32, meanSquares, alpha, mask);
+		}
+
+		mean.convertTo(mean8, CvType.CV_8UC3);
+		// Variance of each channel, then combined with the same weights as the gray difference
+		Core.multiply(mean, mean, variance);
+		Core.subtract(meanSquares, variance, variance);
+		Imgproc.cvtColor(variance, variance, Imgproc.COLOR_BGR2GRAY);
+		Core.max(variance, new Scalar(0), variance);
+		Core.sqrt(variance, variance);
+		Core.multiply(variance, new Scalar(sensitivity), variance);
+		Imgproc.cvtColor(mean, brightness, Imgproc.COLOR_BGR2GRAY);
+		Core.multiply(brightness, new Scalar(relativeThreshold), brightness);
+		Core.max(variance, brightness, variance);
+		Core.max(variance, new Scalar(minThreshold), variance);
+		variance.convertTo(threshold8, CvType.CV_8UC1);
+	}
+
+	/**
+	 * Checks whether enough calibration frames have been learned.
+	 *
+	 * @return true if the model can segment frames
+	 */
+	public synchronized boolean isReady() {
+		return learnedFrames >= MIN_FRAMES;
+	}
+
+	/**
+	 * Gets the number of frames learned since the last reset.
+	 *
+	 * @return Number of calibration frames
+	 */
+	public synchronized int getLearnedFrames() {
+		return learnedFrames;
+	}
+
+	/**
+	 * Extracts the foreground of a frame or of a region of a frame.
+	 *
+	 * @param image  BGR frame, or region of a frame, to segment
+	 * @param region Position of image in the full frame, or null if image is the full frame
+	 * @param buffer 3-channel 8-bit working buffer of the size of image
+	 * @param mask   Receives 255 for foreground pixels and 0 elsewhere
+	 * @return true if the mask was computed, false if the model is not ready
+	 *         or does not match the frame size
+	 */
+	public synchronized boolean foreground(Mat image, Rect region, Mat buffer, Mat mask) {
+		if (!isReady()) {
+			return false;
+		}
+		Rect area = region != null ? region : new Rect(0, 0, image.cols(), image.rows());
+		if (area.width != image.cols() || area.height != image.rows() || area.x + area.width > mean8.cols()
+				|| area.y + area.height > mean8.rows() || (region == null && image.cols() != mean8.cols())) {
+			return false;
+		}
+		Mat meanView = mean8.submat(area);
+		Mat thresholdView = threshold8.submat(area);
+		Core.absdiff(image, meanView, buffer);
+		Imgproc.cvtColor(buffer, mask, Imgproc.COLOR_BGR2GRAY);
+		Core.compare(mask, thresholdView, mask, Core.CMP_GT);
+		meanView.release();
+		thresholdView.release();
+		return true;
+	}
+
+	/**
+	 * Sets how many standard deviations away from the mean a foreground pixel is.
+	 *
+	 * @param sensitivity Number of standard deviations
+	 */
+	public synchronized void setSensitivity(double sensitivity) {
+		this.sensitivity = sensitivity;
+	}
+
+	/**
+	 * Sets the smallest foreground threshold, used where the sheet is very stable.
+	 *
+	 * @param minThreshold Threshold in gray levels
+	 */
+	public synchronized void setMinThreshold(double minThreshold) {
+		this.minThreshold = minThreshold;
+	}
+
+	/**
+	 * Sets the fraction of the sheet brightness a foreground pixel must differ by.
+	 * Scales the threshold down in the shade, where all contrasts are lower.
+	 *
+	 * @param relativeThreshold Fraction of the mean gray level, between 0 and 1
+	 */
+	public synchronized void setRelativeThreshold(double relativeThreshold) {
+		this.relativeThreshold = relativeThreshold;
+	}
+
+	/**
+	 * Sets how fast the model follows the frames given to {@link #update(Mat)}.
+	 *
+	 * @param learningRate Weight of a new frame, between 0 and 1
+	 */
+	public synchronized void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+}
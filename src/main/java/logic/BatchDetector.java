@@ -0,0 +1,284 @@
+package logic;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Offline detection of a corpus of images on every core.
+ * Each image is read and run through a {@link StoneDetector} by a worker of
+ * a fork/join pool; the results are handed over in the order of the images.
+ * Only a few images more than there are workers are in flight at a time,
+ * and each worker keeps one set of working buffers, so memory does not grow
+ * with the size of the corpus.
+ */
+public class BatchDetector implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(BatchDetector.class.getName());
+	private static final PathMatcher IMAGES = FileSystems.getDefault().getPathMatcher("glob:*.{jpg,jpeg,png,bmp}");
+
+	/**
+	 * Detection result of an image of the corpus.
+	 */
+	public static final class Frame {
+		private final Path file;
+		private final StoneDetector.Result result;
+		private final double millis;
+
+		private Frame(Path file, StoneDetector.Result result, double millis) {
+			this.file = file;
+			this.result = result;
+			this.millis = millis;
+		}
+
+		/**
+		 * Gets the image file.
+		 *
+		 * @return Path of the image
+		 */
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the target and stones found on the image.
+		 *
+		 * @return The detection, or null if the image could not be read
+		 */
+		public StoneDetector.Result getResult() {
+			return result;
+		}
+
+		/**
+		 * Gets the time the detection took, reading the image excluded.
+		 *
+		 * @return Detection time in milliseconds
+		 */
+		public double getMillis() {
+			return millis;
+		}
+	}
+
+	/**
+	 * Worker thread releasing its detection buffers when the pool lets it go.
+	 */
+	private static final class Worker extends ForkJoinWorkerThread {
+		Worker(ForkJoinPool pool) {
+			super(pool);
+			setName("batch-detector-" + getPoolIndex());
+		}
+
+		@Override
+		protected void onTermination(Throwable exception) {
+			DetectionContext.releaseCurrent();
+			super.onTermination(exception);
+		}
+	}
+
+	private final StoneDetector detector;
+	private final ForkJoinPool pool;
+	private final int inFlight;
+
+	/**
+	 * Creates a batch detector.
+	 *
+	 * @param detector    Detector run on every image
+	 * @param parallelism Number of worker threads
+	 */
+	public BatchDetector(StoneDetector detector, int parallelism) {
+		this.detector = detector;
+		pool = new ForkJoinPool(parallelism, Worker::new, null, false);
+		// Enough queued images for no worker to wait on the one collecting the results
+		inFlight = 2 * parallelism;
+	}
+
+	/**
+	 * Creates a batch detector using every core.
+	 *
+	 * @param detector Detector run on every image
+	 */
+	public BatchDetector(StoneDetector detector) {
+		this(detector, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Detects the target and the stones of every image.
+	 *
+	 * @param files Images to process
+	 * @param sink  Receives the result of each image on the calling thread,
+	 *              in the order of the files
+	 */
+	public void process(List<Path> files, Consumer<Frame> sink) {
+		Deque<ForkJoinTask<Frame>> pending = new ArrayDeque<>(inFlight);
+		for (Path file : files) {
+			if (pending.size() == inFlight) {
+				sink.accept(pending.removeFirst().join());
+			}
+			pending.addLast(pool.submit(() -> detect(file)));
+		}
+		while (!pending.isEmpty()) {
+			sink.accept(pending.removeFirst().join());
+		}
+	}
+
+	/**
+	 * Reads and detects one image, on a worker thread.
+	 *
+	 * @param file Image to process
+	 * @return Its detection result
+	 */
+	private Frame detect(Path file) {
+		Mat image = Imgcodecs.imread(file.toString());
+		try {
+			if (image.empty()) {
+				logger.log(Level.WARNING, "Unable to read image " + file + ", skipped");
+				return new Frame(file, null, 0);
+			}
+			long start = System.nanoTime();
+			StoneDetector.Result result = detector.detect(image);
+			return new Frame(file, result, (System.nanoTime() - start) / 1e6);
+		} finally {
+			image.release();
+		}
+	}
+
+	/**
+	 * Gets the number of worker threads.
+	 *
+	 * @return Parallelism of the pool
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Stops the workers, which release their buffers.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+		try {
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lists the images of a directory, in the natural order of their names,
+	 * Image_2 before Image_10.
+	 *
+	 * @param source Directory, or a single image
+	 * @param glob   Pattern the image names must match, or null for every image
+	 * @return Image files
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public static List<Path> listImages(Path source, String glob) throws IOException {
+		if (!Files.isDirectory(source)) {
+			return List.of(source);
+		}
+		PathMatcher matcher = glob == null ? IMAGES : FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		try (Stream<Path> files = Files.list(source)) {
+			return files.filter(Files::isRegularFile)
+					.filter(file -> matcher.matches(file.getFileName()) && IMAGES.matches(file.getFileName()))
+					.sorted((a, b) -> ReplayEngine.compareNatural(a.getFileName().toString(),
+							b.getFileName().toString()))
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Command line entry point. Writes one CSV line per stone found, or per
+	 * image without stone, in the order of the images.
+	 * Usage: BatchDetector &lt;directory|image&gt; [--glob PATTERN] [--threads N]
+	 * [--token-radius R] [--target-radius R] [--output FILE]
+	 * For instance: {@code BatchDetector ImagesTest --glob "Image_clean_*.jpg" --output detections.csv}
+	 *
+	 * @param args Command line arguments
+	 * @throws IOException if the images cannot be listed or the output written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: BatchDetector <directory|image> [--glob PATTERN] [--threads N]"
+					+ " [--token-radius R] [--target-radius R] [--output FILE]");
+			System.exit(2);
+		}
+		List<String> options = Arrays.asList(args).subList(1, args.length);
+		List<Path> files = listImages(Paths.get(args[0]), ReplayEngine.option(options, "--glob"));
+		if (files.isEmpty()) {
+			System.err.println("No image found in " + args[0]);
+			System.exit(1);
+		}
+		String threads = ReplayEngine.option(options, "--threads");
+		String tokenRadius = ReplayEngine.option(options, "--token-radius");
+		String targetRadius = ReplayEngine.option(options, "--target-radius");
+		String output = ReplayEngine.option(options, "--output");
+		StoneDetector detector = new StoneDetector(tokenRadius == null ? 34 : Double.parseDouble(tokenRadius),
+				targetRadius == null ? 205 : Double.parseDouble(targetRadius));
+
+		PrintStream out = output == null ? System.out : new PrintStream(output, "UTF-8");
+		long start = System.nanoTime();
+		double[] detectionMillis = { 0 };
+		try (BatchDetector batch = threads == null ? new BatchDetector(detector)
+				: new BatchDetector(detector, Integer.parseInt(threads))) {
+			out.println("frame,target_x,target_y,stone,x,y,radius,confidence,uncertainty");
+			batch.process(files, frame -> {
+				detectionMillis[0] += frame.getMillis();
+				write(out, frame);
+			});
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.println(String.format(Locale.ROOT,
+					"%d images in %.2f s on %d threads, %.1f images/s, detection %.1f ms mean", files.size(),
+					seconds, batch.getParallelism(), files.size() / seconds, detectionMillis[0] / files.size()));
+		} finally {
+			if (out != System.out) {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the CSV lines of an image.
+	 *
+	 * @param out   Output
+	 * @param frame Detection result of the image
+	 */
+	private static void write(PrintStream out, Frame frame) {
+		String name = frame.getFile().getFileName().toString();
+		StoneDetector.Result result = frame.getResult();
+		if (result == null) {
+			return;
+		}
+		StoneDetector.Target target = result.getTarget();
+		String prefix = target == null ? name + ",,"
+				: String.format(Locale.ROOT, "%s,%.2f,%.2f", name, target.getCenter()[0], target.getCenter()[1]);
+		if (result.getStones().isEmpty()) {
+			out.println(prefix + ",,,,,,");
+		}
+		int k = 0;
+		for (DetectedStone stone : result.getStones()) {
+			out.println(String.format(Locale.ROOT, "%s,%d,%.2f,%.2f,%.2f,%.2f,%.2f", prefix, k++, stone.getX(),
+					stone.getY(), stone.getRadius(), stone.getConfidence(), stone.getUncertainty()));
+		}
+	}
+}
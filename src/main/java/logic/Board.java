@@ -0,0 +1,349 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Stones of the current end, stored as parallel arrays indexed by turn.
+ * Each slot holds the centre, owner, distance to the target and its
+ * uncertainty of the stone thrown at that turn, so scoring and collision
+ * loops walk primitive arrays instead of following one object and one
+ * position array per stone, and placing a stone allocates nothing.
+ * Slots are stamped with the generation of the end they were placed in:
+ * clearing the board for a new end only starts a new generation, whatever
+ * the number of stones.
+ * Stones in play are also kept in a {@link StoneGrid}, updated as they are
+ * placed, moved and removed, so that proximity queries only look at the
+ * cells around the query point instead of every stone of the end.
+ */
+public final class Board {
+	private static final float CELL_SIZE = 64; // about two stone radii
+
+	private float[] x = new float[0];
+	private float[] y = new float[0];
+	private int[] player = new int[0];
+	private float[] distance = new float[0];
+	private float[] uncertainty = new float[0];
+	private boolean[] alive = new boolean[0];
+	private boolean[] onSheet = new boolean[0];
+	private int[] placed = new int[0]; // generation the slot was last placed in
+	private int generation = 1;
+	private int size;
+	private final StoneGrid grid = new StoneGrid(CELL_SIZE);
+
+	/**
+	 * Creates an empty board.
+	 *
+	 * @param size Number of stones of an end
+	 */
+	public Board(int size) {
+		resize(size);
+	}
+
+	/**
+	 * Changes the number of stones of an end. Stones already placed are kept;
+	 * the arrays only grow, doubling their capacity, when the board gets
+	 * larger than it ever was.
+	 *
+	 * @param size New number of stones
+	 */
+	public void resize(int size) {
+		if (size > x.length) {
+			int capacity = Math.max(size, 2 * x.length);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			player = Arrays.copyOf(player, capacity);
+			distance = Arrays.copyOf(distance, capacity);
+			uncertainty = Arrays.copyOf(uncertainty, capacity);
+			alive = Arrays.copyOf(alive, capacity);
+			onSheet = Arrays.copyOf(onSheet, capacity);
+			placed = Arrays.copyOf(placed, capacity);
+			grid.ensureCapacity(capacity);
+		}
+		// Slots coming back into use must not show stones of a previous size
+		for (int i = this.size; i < size; i++) {
+			placed[i] = 0;
+			grid.remove(i);
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Removes every stone, in constant time.
+	 */
+	public void clear() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			Arrays.fill(placed, 0);
+			generation = 1;
+		}
+		grid.clear();
+	}
+
+	/**
+	 * Places the stone of a turn.
+	 *
+	 * @param index       Turn of the stone
+	 * @param x           Horizontal coordinate of the centre
+	 * @param y           Vertical coordinate of the centre
+	 * @param player      Player who threw the stone
+	 * @param distance    Distance to the target, negative if unknown
+	 * @param uncertainty Standard deviation of the distance
+	 */
+	public void place(int index, double x, double y, int player, double distance, double uncertainty) {
+		this.player[index] = player;
+		placed[index] = generation;
+		alive[index] = true;
+		onSheet[index] = true;
+		move(index, x, y, distance, uncertainty);
+	}
+
+	/**
+	 * Updates the position of a stone already placed.
+	 *
+	 * @param index       Turn of the stone
+	 * @param x           Horizontal coordinate of the centre
+	 * @param y           Vertical coordinate of the centre
+	 * @param distance    Distance to the target, negative if unknown
+	 * @param uncertainty Standard deviation of the distance
+	 */
+	public void move(int index, double x, double y, double distance, double uncertainty) {
+		this.x[index] = (float) x;
+		this.y[index] = (float) y;
+		this.distance[index] = (float) distance;
+		this.uncertainty[index] = (float) uncertainty;
+		if (isAlive(index)) {
+			grid.put(index, this.x[index], this.y[index]);
+		}
+	}
+
+	/**
+	 * Takes a stone out of play, for instance after it was knocked out.
+	 *
+	 * @param index Turn of the stone
+	 */
+	public void remove(int index) {
+		alive[index] = false;
+		onSheet[index] = false;
+		grid.remove(index);
+	}
+
+	/**
+	 * Finds the stones hit by the stone of a turn.
+	 * Stones still seen on the sheet are skipped, their detected position is
+	 * authoritative.
+	 *
+	 * @param turn        Turn of the stone just played
+	 * @param minDistance Distance between centres below which two stones collide
+	 * @param turns       Receives the turns of the stones hit
+	 * @return Number of stones hit, which may exceed the length of turns
+	 */
+	public int findCollisions(int turn, double minDistance, int[] turns) {
+		if (!isAlive(turn)) {
+			return 0;
+		}
+		float cx = x[turn];
+		float cy = y[turn];
+		double limit = minDistance * minDistance;
+		int count = 0;
+		for (int gy = grid.cell(cy - minDistance); gy <= grid.cell(cy + minDistance); gy++) {
+			for (int gx = grid.cell(cx - minDistance); gx <= grid.cell(cx + minDistance); gx++) {
+				for (int i = grid.first(gx, gy); i >= 0; i = grid.next(i)) {
+					float dx = x[i] - cx;
+					float dy = y[i] - cy;
+					if (i < turn && !onSheet[i] && dx * dx + dy * dy < limit) {
+						if (count < turns.length) {
+							turns[count] = i;
+						}
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the scored stone closest to a point, the button for instance.
+	 * Visits the rings of cells around the point from the inside out and
+	 * stops once the next ring cannot hold a closer stone.
+	 *
+	 * @param x      Horizontal coordinate of the point
+	 * @param y      Vertical coordinate of the point
+	 * @param parity Parity of the turns of the player whose stones are
+	 *               searched, -1 for the stones of both players
+	 * @return Turn of the closest stone with a known distance to the target,
+	 *         or -1 if there is none
+	 */
+	public int nearest(double x, double y, int parity) {
+		int cx = grid.cell(x);
+		int cy = grid.cell(y);
+		int rings = grid.rings(cx, cy);
+		int closest = -1;
+		double minDistance = Double.MAX_VALUE;
+		for (int ring = 0; ring <= rings; ring++) {
+			for (int gy = cy - ring; gy <= cy + ring; gy++) {
+				// Inner rows of the ring only have their two end cells
+				int step = gy == cy - ring || gy == cy + ring ? 1 : Math.max(1, 2 * ring);
+				for (int gx = cx - ring; gx <= cx + ring; gx += step) {
+					for (int i = grid.first(gx, gy); i >= 0; i = grid.next(i)) {
+						if (i >= size || distance[i] < 0 || (parity >= 0 && i % 2 != parity)) {
+							continue;
+						}
+						double dx = this.x[i] - x;
+						double dy = this.y[i] - y;
+						double d = dx * dx + dy * dy;
+						if (d < minDistance) {
+							minDistance = d;
+							closest = i;
+						}
+					}
+				}
+			}
+			// Stones beyond this ring are at least ring cells away
+			double reach = ring * grid.getCellSize();
+			if (closest != -1 && minDistance <= reach * reach) {
+				break;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Finds the stones in play within a distance of a point.
+	 *
+	 * @param x      Horizontal coordinate of the point
+	 * @param y      Vertical coordinate of the point
+	 * @param radius Distance from the point
+	 * @param turns  Receives the turns of the stones found, in no particular order
+	 * @return Number of stones found, which may exceed the length of turns
+	 */
+	public int within(double x, double y, double radius, int[] turns) {
+		double limit = radius * radius;
+		int count = 0;
+		for (int gy = grid.cell(y - radius); gy <= grid.cell(y + radius); gy++) {
+			for (int gx = grid.cell(x - radius); gx <= grid.cell(x + radius); gx++) {
+				for (int i = grid.first(gx, gy); i >= 0; i = grid.next(i)) {
+					double dx = this.x[i] - x;
+					double dy = this.y[i] - y;
+					if (i < size && dx * dx + dy * dy <= limit) {
+						if (count < turns.length) {
+							turns[count] = i;
+						}
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the number of stones of an end.
+	 *
+	 * @return Number of slots of the board
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks whether the stone of a turn is in play.
+	 *
+	 * @param index Turn of the stone
+	 * @return true if the stone was placed in this end and not removed
+	 */
+	public boolean isAlive(int index) {
+		return placed[index] == generation && alive[index];
+	}
+
+	/**
+	 * Checks whether the stone of a turn was seen on the sheet in the last
+	 * detection, as opposed to only being remembered by the game.
+	 *
+	 * @param index Turn of the stone
+	 * @return true if the stone is physically on the sheet
+	 */
+	public boolean isOnSheet(int index) {
+		return placed[index] == generation && onSheet[index];
+	}
+
+	/**
+	 * Sets whether the stone of a turn is physically on the sheet.
+	 *
+	 * @param index   Turn of the stone
+	 * @param onSheet true if the stone was seen in the last detection
+	 */
+	public void setOnSheet(int index, boolean onSheet) {
+		this.onSheet[index] = onSheet;
+	}
+
+	/**
+	 * Records that no stone is seen on the sheet any more.
+	 */
+	public void clearOnSheet() {
+		Arrays.fill(onSheet, 0, size, false);
+	}
+
+	/**
+	 * Gets the horizontal coordinate of a stone.
+	 *
+	 * @param index Turn of the stone
+	 * @return x coordinate in pixels
+	 */
+	public float getX(int index) {
+		return x[index];
+	}
+
+	/**
+	 * Gets the vertical coordinate of a stone.
+	 *
+	 * @param index Turn of the stone
+	 * @return y coordinate in pixels
+	 */
+	public float getY(int index) {
+		return y[index];
+	}
+
+	/**
+	 * Gets the player owning the stone of a turn.
+	 *
+	 * @param index Turn of the stone
+	 * @return Player who threw the stone, or the player of the turn if none was thrown yet
+	 */
+	public int getPlayer(int index) {
+		return placed[index] == generation ? player[index] : index % 2;
+	}
+
+	/**
+	 * Gets the distance between a stone and the target.
+	 *
+	 * @param index Turn of the stone
+	 * @return Distance in pixels, negative if unknown
+	 */
+	public float getDistance(int index) {
+		return distance[index];
+	}
+
+	/**
+	 * Gets the standard deviation of the distance between a stone and the target.
+	 *
+	 * @param index Turn of the stone
+	 * @return Uncertainty in pixels
+	 */
+	public float getUncertainty(int index) {
+		return uncertainty[index];
+	}
+
+	/**
+	 * Gets the position of a stone as whole pixel coordinates.
+	 *
+	 * @param index Turn of the stone
+	 * @return Position [x,y], rounded, or [0,0] if the stone is not in play
+	 */
+	public int[] getPosition(int index) {
+		if (!isAlive(index)) {
+			return new int[] { 0, 0 };
+		}
+		return new int[] { Math.round(x[index]), Math.round(y[index]) };
+	}
+}
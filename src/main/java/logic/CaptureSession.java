@@ -0,0 +1,186 @@
+package logic;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-lived webcam session that keeps a single camera device open.
+ * Streams frames continuously on a dedicated thread and only pushes camera
+ * settings (resolution, exposure) to the device when they actually change.
+ */
+public class CaptureSession implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(CaptureSession.class.getName());
+	private static final long RETRY_DELAY_MS = 500;
+
+	private final int cameraIndex;
+	private final FrameBus frameBus;
+	private VideoCapture camera;
+	private Thread captureThread;
+	private volatile boolean running;
+
+	// Settings currently applied on the device, used to detect changes
+	private int appliedWidth = -1;
+	private int appliedHeight = -1;
+	private int appliedExposure = Integer.MIN_VALUE;
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Creates a capture session for the given camera.
+	 * The device is not opened until {@link #start()} is called.
+	 *
+	 * @param cameraIndex OpenCV index of the camera device
+	 * @param frameBus    Bus every captured frame is published to
+	 */
+	public CaptureSession(int cameraIndex, FrameBus frameBus) {
+		this.cameraIndex = cameraIndex;
+		this.frameBus = frameBus;
+	}
+
+	/**
+	 * Starts streaming frames on a background thread.
+	 * The camera is opened by the capture thread, which keeps retrying while
+	 * the device is unavailable. Calling this method on a running session has
+	 * no effect.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		captureThread = new Thread(this::captureLoop, "camera-capture");
+		captureThread.setDaemon(true);
+		captureThread.start();
+	}
+
+	/**
+	 * Opens the camera device and resets the applied settings so they are
+	 * pushed again on the next frame.
+	 *
+	 * @return true if the device was opened successfully
+	 */
+	private boolean open() {
+		camera = new VideoCapture(cameraIndex);
+		if (!camera.isOpened()) {
+			logger.log(Level.SEVERE, "Error: Failed to initialize camera capture");
+			camera.release();
+			camera = null;
+			return false;
+		}
+		appliedWidth = -1;
+		appliedHeight = -1;
+		appliedExposure = Integer.MIN_VALUE;
+		return true;
+	}
+
+	/**
+	 * Pushes the current camera settings to the device, only for the values
+	 * that differ from what was last applied.
+	 */
+	private void applySettings() {
+		int width = ImageHandler.getCameraWidth();
+		int height = ImageHandler.getCameraHeight();
+		if (width != appliedWidth || height != appliedHeight) {
+			camera.set(Videoio.CAP_PROP_FRAME_WIDTH, width);
+			camera.set(Videoio.CAP_PROP_FRAME_HEIGHT, height);
+			appliedWidth = width;
+			appliedHeight = height;
+		}
+		// Exposure is only driven once auto-exposure has been requested
+		if (WebcamCapture.isExpositionSet()) {
+			int exposure = ImageHandler.getExpositionValue();
+			if (exposure != appliedExposure) {
+				camera.set(Videoio.CAP_PROP_EXPOSURE, exposure);
+				appliedExposure = exposure;
+			}
+		}
+	}
+
+	/**
+	 * Capture loop run by the background thread.
+	 * Reads frames as fast as the camera delivers them until the session is closed.
+	 */
+	private void captureLoop() {
+		Mat frame = new Mat();
+		while (running) {
+			try {
+				if (camera == null && !open()) {
+					Thread.sleep(RETRY_DELAY_MS);
+					continue;
+				}
+				applySettings();
+				if (camera.read(frame) && !frame.empty()) {
+					frameBus.publish(frame);
+				} else {
+					logger.log(Level.WARNING, "Capture attempt failed, retrying...");
+					Thread.sleep(RETRY_DELAY_MS);
+					if (!camera.isOpened()) {
+						camera.release();
+						camera = null;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "Error during image capture, reopening the camera", e);
+				// Start over from a fresh device instead of spinning on a persistent failure
+				if (camera != null) {
+					camera.release();
+					camera = null;
+				}
+				try {
+					Thread.sleep(RETRY_DELAY_MS);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		frame.release();
+	}
+
+	/**
+	 * Returns a copy of the most recent frame read from the camera.
+	 *
+	 * @return Copy of the latest frame, or null if no frame was captured yet
+	 */
+	public Mat getLatestFrame() {
+		return frameBus.getLatestFrame();
+	}
+
+	/**
+	 * Checks whether the session is currently streaming.
+	 *
+	 * @return true if the capture thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stops the capture thread and releases the camera device.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (captureThread != null) {
+			try {
+				captureThread.join(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			captureThread = null;
+		}
+		if (camera != null) {
+			camera.release();
+			camera = null;
+		}
+	}
+}
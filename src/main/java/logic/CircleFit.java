@@ -0,0 +1,273 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Circle fitted to edge points by geometric least squares.
+ * Refines the centre of a Hough detection to sub-pixel precision and
+ * estimates how precise it is: the uncertainty combines the scatter of the
+ * edge points around the circle with how much of the circle they cover, so
+ * a stone partly hidden or cut by a shadow gets a larger uncertainty.
+ */
+public final class CircleFit {
+	private static final int MAX_ITERATIONS = 10;
+	private static final int MIN_POINTS = 12;
+	private static final double OUTLIER_SIGMAS = 2.5;
+	// Floor of the uncertainty: neighbouring edge pixels are not independent measurements
+	private static final double MIN_UNCERTAINTY = 0.5;
+
+	private final double x;
+	private final double y;
+	private final double radius;
+	private final double uncertainty;
+	private final int points;
+
+	/**
+	 * Creates a fitted circle.
+	 *
+	 * @param x           Horizontal coordinate of the centre
+	 * @param y           Vertical coordinate of the centre
+	 * @param radius      Radius in pixels
+	 * @param uncertainty Standard deviation of the centre position in pixels
+	 * @param points      Number of edge points the circle was fitted to
+	 */
+	public CircleFit(double x, double y, double radius, double uncertainty, int points) {
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.uncertainty = uncertainty;
+		this.points = points;
+	}
+
+	/**
+	 * Fits a circle to edge points, starting from an approximate circle.
+	 * Runs a Gauss-Newton fit of the distances to the circle, drops the
+	 * points too far from the first fit (edges of another object) and fits
+	 * again.
+	 *
+	 * @param xs      Horizontal coordinates of the edge points
+	 * @param ys      Vertical coordinates of the edge points
+	 * @param count   Number of points to use from the arrays
+	 * @param centerX Initial horizontal coordinate of the centre
+	 * @param centerY Initial vertical coordinate of the centre
+	 * @param radius  Initial radius
+	 * @return The fitted circle, or null if there are too few points or the
+	 *         fit does not converge
+	 */
+	public static CircleFit fit(double[] xs, double[] ys, int count, double centerX, double centerY,
+			double radius) {
+		CircleFit first = solve(xs, ys, count, centerX, centerY, radius);
+		if (first == null) {
+			return null;
+		}
+		// Residual of the first fit, to reject the outliers
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			double distance = Math.hypot(xs[i] - first.x, ys[i] - first.y) - first.radius;
+			sum += distance * distance;
+		}
+		double limit = Math.max(1.0, OUTLIER_SIGMAS * Math.sqrt(sum / Math.max(1, count - 3)));
+		int kept = 0;
+		double[] keptX = new double[count];
+		double[] keptY = new double[count];
+		for (int i = 0; i < count; i++) {
+			if (Math.abs(Math.hypot(xs[i] - first.x, ys[i] - first.y) - first.radius) <= limit) {
+				keptX[kept] = xs[i];
+				keptY[kept] = ys[i];
+				kept++;
+			}
+		}
+		if (kept == count) {
+			return first;
+		}
+		return solve(keptX, keptY, kept, first.x, first.y, first.radius);
+	}
+
+	/**
+	 * Runs the Gauss-Newton iterations and estimates the centre uncertainty
+	 * from the covariance of the solution.
+	 *
+	 * @param xs      Horizontal coordinates of the edge points
+	 * @param ys      Vertical coordinates of the edge points
+	 * @param count   Number of points to use
+	 * @param centerX Initial horizontal coordinate of the centre
+	 * @param centerY Initial vertical coordinate of the centre
+	 * @param radius  Initial radius
+	 * @return The fitted circle, or null if it cannot be computed
+	 */
+	private static CircleFit solve(double[] xs, double[] ys, int count, double centerX, double centerY,
+			double radius) {
+		if (count < MIN_POINTS) {
+			return null;
+		}
+		double cx = centerX;
+		double cy = centerY;
+		double r = radius;
+		double[] normal = new double[9];
+		double[] inverse = new double[9];
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			Arrays.fill(normal, 0);
+			double gx = 0;
+			double gy = 0;
+			double gr = 0;
+			for (int i = 0; i < count; i++) {
+				double dx = xs[i] - cx;
+				double dy = ys[i] - cy;
+				double distance = Math.hypot(dx, dy);
+				if (distance == 0) {
+					continue;
+				}
+				// Jacobian row of the residual distance - r
+				double jx = -dx / distance;
+				double jy = -dy / distance;
+				double residual = distance - r;
+				accumulate(normal, jx, jy, -1);
+				gx += jx * residual;
+				gy += jy * residual;
+				gr -= residual;
+			}
+			if (!invert(normal, inverse)) {
+				return null;
+			}
+			double stepX = -(inverse[0] * gx + inverse[1] * gy + inverse[2] * gr);
+			double stepY = -(inverse[3] * gx + inverse[4] * gy + inverse[5] * gr);
+			double stepR = -(inverse[6] * gx + inverse[7] * gy + inverse[8] * gr);
+			cx += stepX;
+			cy += stepY;
+			r += stepR;
+			if (Math.abs(stepX) + Math.abs(stepY) + Math.abs(stepR) < 1e-3) {
+				break;
+			}
+		}
+		if (!(r > 0) || Double.isNaN(cx) || Double.isNaN(cy)) {
+			return null;
+		}
+
+		// Covariance of the centre: residual variance times the inverse of the normal matrix
+		Arrays.fill(normal, 0);
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			double dx = xs[i] - cx;
+			double dy = ys[i] - cy;
+			double distance = Math.hypot(dx, dy);
+			if (distance == 0) {
+				continue;
+			}
+			accumulate(normal, -dx / distance, -dy / distance, -1);
+			double residual = distance - r;
+			sum += residual * residual;
+		}
+		if (!invert(normal, inverse)) {
+			return null;
+		}
+		double variance = sum / (count - 3);
+		double uncertainty = Math.sqrt(variance * (inverse[0] + inverse[4]));
+		return new CircleFit(cx, cy, r, Math.max(MIN_UNCERTAINTY, uncertainty), count);
+	}
+
+	/**
+	 * Adds the outer product of a Jacobian row to a symmetric 3x3 matrix.
+	 *
+	 * @param matrix Row-major 3x3 matrix
+	 * @param a      First component of the row
+	 * @param b      Second component of the row
+	 * @param c      Third component of the row
+	 */
+	private static void accumulate(double[] matrix, double a, double b, double c) {
+		matrix[0] += a * a;
+		matrix[1] += a * b;
+		matrix[2] += a * c;
+		matrix[3] += b * a;
+		matrix[4] += b * b;
+		matrix[5] += b * c;
+		matrix[6] += c * a;
+		matrix[7] += c * b;
+		matrix[8] += c * c;
+	}
+
+	/**
+	 * Inverts a 3x3 matrix by cofactors.
+	 *
+	 * @param m       Row-major matrix to invert
+	 * @param inverse Receives the row-major inverse
+	 * @return false if the matrix is singular
+	 */
+	private static boolean invert(double[] m, double[] inverse) {
+		double c0 = m[4] * m[8] - m[5] * m[7];
+		double c1 = m[5] * m[6] - m[3] * m[8];
+		double c2 = m[3] * m[7] - m[4] * m[6];
+		double determinant = m[0] * c0 + m[1] * c1 + m[2] * c2;
+		if (Math.abs(determinant) < 1e-12) {
+			return false;
+		}
+		inverse[0] = c0 / determinant;
+		inverse[1] = (m[2] * m[7] - m[1] * m[8]) / determinant;
+		inverse[2] = (m[1] * m[5] - m[2] * m[4]) / determinant;
+		inverse[3] = c1 / determinant;
+		inverse[4] = (m[0] * m[8] - m[2] * m[6]) / determinant;
+		inverse[5] = (m[2] * m[3] - m[0] * m[5]) / determinant;
+		inverse[6] = c2 / determinant;
+		inverse[7] = (m[1] * m[6] - m[0] * m[7]) / determinant;
+		inverse[8] = (m[0] * m[4] - m[1] * m[3]) / determinant;
+		return true;
+	}
+
+	/**
+	 * Returns the horizontal coordinate of the centre.
+	 *
+	 * @return x coordinate in pixels
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the vertical coordinate of the centre.
+	 *
+	 * @return y coordinate in pixels
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the radius of the circle.
+	 *
+	 * @return Radius in pixels
+	 */
+	public double getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Returns the standard deviation of the centre position.
+	 *
+	 * @return Uncertainty in pixels
+	 */
+	public double getUncertainty() {
+		return uncertainty;
+	}
+
+	/**
+	 * Returns the number of edge points the circle was fitted to.
+	 *
+	 * @return Number of points
+	 */
+	public int getPoints() {
+		return points;
+	}
+
+	/**
+	 * Returns the centre as whole pixel coordinates.
+	 *
+	 * @return Position coordinates [x,y], rounded
+	 */
+	public int[] getPosition() {
+		return new int[] { (int) Math.round(x), (int) Math.round(y) };
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Circle(%.2f, %.2f, r=%.1f, +/-%.2f, %d points)", x, y, radius, uncertainty, points);
+	}
+}
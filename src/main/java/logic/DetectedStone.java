@@ -0,0 +1,103 @@
+package logic;
+
+/**
+ * A stone found on the sheet by the detection pipeline.
+ * Groups the Hough circles that belong to the same stone into one centre,
+ * radius and confidence. The centre is refined to sub-pixel precision when
+ * the edges of the stone allow it, with an estimate of its uncertainty.
+ */
+public class DetectedStone {
+	private final double x;
+	private final double y;
+	private final double radius;
+	private final double confidence;
+	private final double uncertainty;
+
+	/**
+	 * Creates a detected stone.
+	 *
+	 * @param x           Horizontal coordinate of the centre in the full frame
+	 * @param y           Vertical coordinate of the centre in the full frame
+	 * @param radius      Radius in pixels
+	 * @param confidence  Confidence between 0 and 1
+	 * @param uncertainty Standard deviation of the centre position in pixels
+	 */
+	public DetectedStone(double x, double y, double radius, double confidence, double uncertainty) {
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+		this.confidence = confidence;
+		this.uncertainty = uncertainty;
+	}
+
+	/**
+	 * Returns the horizontal coordinate of the centre.
+	 *
+	 * @return x coordinate in pixels
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the vertical coordinate of the centre.
+	 *
+	 * @return y coordinate in pixels
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the radius of the stone.
+	 *
+	 * @return Radius in pixels
+	 */
+	public double getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Returns how confident the detection is, from the number of circles
+	 * that voted for this stone.
+	 *
+	 * @return Confidence between 0 and 1
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * Returns the standard deviation of the centre position.
+	 *
+	 * @return Uncertainty in pixels
+	 */
+	public double getUncertainty() {
+		return uncertainty;
+	}
+
+	/**
+	 * Returns the centre as whole pixel coordinates.
+	 *
+	 * @return Position coordinates [x,y], rounded
+	 */
+	public int[] getPosition() {
+		return new int[] { (int) Math.round(x), (int) Math.round(y) };
+	}
+
+	/**
+	 * Calculates the Euclidean distance between the centre and a point.
+	 *
+	 * @param point Coordinates [x,y] of the point
+	 * @return The distance in pixels
+	 */
+	public double getDistanceTo(int[] point) {
+		return Math.hypot(x - point[0], y - point[1]);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Stone(%.2f, %.2f, r=%.1f, confidence=%.2f, +/-%.2f)", x, y, radius, confidence,
+				uncertainty);
+	}
+}
@@ -0,0 +1,281 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Working buffers of the detection pipeline, one set per thread.
+ * Buffers are allocated at the exact size of the image being processed and
+ * kept for the few sizes a detection alternates between (full frame, target
+ * window, detection region), so a detection does not allocate native memory
+ * once these sizes have been seen. Structuring elements are cached for the
+ * current token radius.
+ * A context is only released by its own thread, or once that thread has
+ * ended, never while a detection may still be using it.
+ */
+final class DetectionContext {
+	private static final Queue<DetectionContext> contexts = new ConcurrentLinkedQueue<>();
+	private static final ThreadLocal<DetectionContext> current = ThreadLocal.withInitial(() -> {
+		DetectionContext context = new DetectionContext();
+		contexts.add(context);
+		return context;
+	});
+
+	static {
+		Metrics.getInstance().gauge("mat.contexts", contexts::size);
+	}
+
+	private static final int MAX_SIZES = 4; // buffer sets kept, one per image size
+
+	/**
+	 * Buffers of one image size. They are standalone Mats rather than views
+	 * of larger ones: Canny, the morphology and the Hough transform read past
+	 * the edges of a view, which would make results depend on earlier frames.
+	 */
+	private static final class Buffers {
+		final int rows;
+		final int cols;
+		final Mat hsv = new Mat();
+		final Mat redMask1 = new Mat();
+		final Mat redMask2 = new Mat();
+		final Mat redMask = new Mat();
+		final Mat blueMask = new Mat();
+		final Mat whiteMask = new Mat();
+		final Mat gray = new Mat();
+
+		Buffers(int rows, int cols) {
+			this.rows = rows;
+			this.cols = cols;
+			hsv.create(rows, cols, CvType.CV_8UC3);
+			redMask1.create(rows, cols, CvType.CV_8UC1);
+			redMask2.create(rows, cols, CvType.CV_8UC1);
+			redMask.create(rows, cols, CvType.CV_8UC1);
+			blueMask.create(rows, cols, CvType.CV_8UC1);
+			whiteMask.create(rows, cols, CvType.CV_8UC1);
+			gray.create(rows, cols, CvType.CV_8UC1);
+		}
+
+		void release() {
+			hsv.release();
+			redMask1.release();
+			redMask2.release();
+			redMask.release();
+			blueMask.release();
+			whiteMask.release();
+			gray.release();
+		}
+	}
+
+	// Most recently used first
+	private final List<Buffers> buffers = new ArrayList<>(MAX_SIZES + 1);
+
+	Mat hsv;
+	Mat redMask1;
+	Mat redMask2;
+	Mat redMask;
+	Mat blueMask;
+	Mat whiteMask;
+	Mat gray;
+	final Mat circles = new Mat();
+	final Mat coarse = new Mat(); // quarter-scale frame of the target search
+	final Mat coarseEdges = new Mat();
+	final Mat refineGray = new Mat(); // patch around a circle being refined
+	final Mat refineEdges = new Mat();
+	final Mat edgePoints = new Mat();
+
+	private Mat openElement;
+	private Mat closeElement;
+	private double elementRadius = Double.NaN;
+	private Mat targetElement;
+	private Mat coarseTargetElement;
+	private final Thread owner = Thread.currentThread();
+
+	private DetectionContext() {
+		prepare(ImageHandler.getCameraHeight(), ImageHandler.getCameraWidth());
+	}
+
+	/**
+	 * Gets the context of the calling thread, creating it on first use.
+	 *
+	 * @return Detection context owned by the current thread
+	 */
+	static DetectionContext get() {
+		return current.get();
+	}
+
+	/**
+	 * Releases the native memory of the context of the calling thread and of
+	 * the contexts of threads that have ended. Threads still running keep
+	 * theirs, and release it with {@link #releaseCurrent()} when they end.
+	 */
+	static void releaseAll() {
+		Thread caller = Thread.currentThread();
+		for (DetectionContext context : contexts) {
+			if (context.owner == caller || !context.owner.isAlive()) {
+				contexts.remove(context);
+				context.release();
+			}
+		}
+		current.remove();
+	}
+
+	/**
+	 * Releases the native memory of the context of the calling thread and
+	 * forgets it, without creating one if the thread never detected anything.
+	 * Called by detection worker threads about to end.
+	 */
+	static void releaseCurrent() {
+		Thread caller = Thread.currentThread();
+		for (DetectionContext context : contexts) {
+			if (context.owner == caller) {
+				contexts.remove(context);
+				context.release();
+			}
+		}
+		current.remove();
+	}
+
+	/**
+	 * Selects the working buffers for an image of the given size.
+	 * Buffers of the last few sizes are kept; a new size allocates a set and
+	 * evicts the least recently used one.
+	 *
+	 * @param rows Height of the image to process
+	 * @param cols Width of the image to process
+	 */
+	void prepare(int rows, int cols) {
+		Buffers selected = null;
+		for (int i = 0; i < buffers.size(); i++) {
+			Buffers candidate = buffers.get(i);
+			if (candidate.rows == rows && candidate.cols == cols) {
+				selected = buffers.remove(i);
+				break;
+			}
+		}
+		if (selected == null) {
+			selected = new Buffers(rows, cols);
+			if (buffers.size() == MAX_SIZES) {
+				buffers.remove(MAX_SIZES - 1).release();
+			}
+		}
+		buffers.add(0, selected);
+		hsv = selected.hsv;
+		redMask1 = selected.redMask1;
+		redMask2 = selected.redMask2;
+		redMask = selected.redMask;
+		blueMask = selected.blueMask;
+		whiteMask = selected.whiteMask;
+		gray = selected.gray;
+	}
+
+	/**
+	 * Gets the elliptic structuring element used to open the token mask.
+	 *
+	 * @param tokenRadius Current token radius
+	 * @return Element of size tokenRadius / 4
+	 */
+	Mat getOpenElement(double tokenRadius) {
+		updateElements(tokenRadius);
+		return openElement;
+	}
+
+	/**
+	 * Gets the elliptic structuring element used to close the token mask.
+	 *
+	 * @param tokenRadius Current token radius
+	 * @return Element of size tokenRadius / 2
+	 */
+	Mat getCloseElement(double tokenRadius) {
+		updateElements(tokenRadius);
+		return closeElement;
+	}
+
+	/**
+	 * Gets the 7x7 elliptic structuring element used to close target edges.
+	 *
+	 * @return Target closing element
+	 */
+	Mat getTargetElement() {
+		if (targetElement == null) {
+			targetElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(7, 7));
+		}
+		return targetElement;
+	}
+
+	/**
+	 * Gets the 3x3 elliptic structuring element used to close target edges at quarter scale.
+	 *
+	 * @return Coarse target closing element
+	 */
+	Mat getCoarseTargetElement() {
+		if (coarseTargetElement == null) {
+			coarseTargetElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3));
+		}
+		return coarseTargetElement;
+	}
+
+	/**
+	 * Rebuilds the token structuring elements when the radius changed.
+	 *
+	 * @param tokenRadius Current token radius
+	 */
+	private void updateElements(double tokenRadius) {
+		if (tokenRadius == elementRadius && openElement != null) {
+			return;
+		}
+		releaseElements();
+		openElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
+				new Size((int) tokenRadius / 4, (int) tokenRadius / 4));
+		closeElement = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
+				new Size((int) tokenRadius / 2, (int) tokenRadius / 2));
+		elementRadius = tokenRadius;
+	}
+
+	private void releaseElements() {
+		if (openElement != null) {
+			openElement.release();
+			closeElement.release();
+			openElement = null;
+			closeElement = null;
+		}
+	}
+
+	/**
+	 * Releases every buffer and structuring element held by this context.
+	 */
+	private void release() {
+		for (Buffers set : buffers) {
+			set.release();
+		}
+		buffers.clear();
+		hsv = null;
+		redMask1 = null;
+		redMask2 = null;
+		redMask = null;
+		blueMask = null;
+		whiteMask = null;
+		gray = null;
+		releaseElements();
+		if (targetElement != null) {
+			targetElement.release();
+			targetElement = null;
+		}
+		if (coarseTargetElement != null) {
+			coarseTargetElement.release();
+			coarseTargetElement = null;
+		}
+		circles.release();
+		coarse.release();
+		coarseEdges.release();
+		refineGray.release();
+		refineEdges.release();
+		edgePoints.release();
+	}
+}
@@ -0,0 +1,467 @@
+package logic;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Mat;
+
+/**
+ * Detection stage between the capture thread and the display.
+ * A worker thread takes the latest frame from the frame bus, detects the
+ * stones on it and publishes a {@link FrameResult} that the JavaFX thread
+ * only has to paint. Both hand-offs hold a single item: frames that arrive
+ * while the detection is busy, and results the display has not taken yet,
+ * are dropped in favour of newer ones and counted.
+ * While a settled stone waits to be removed, the worker can skip the full
+ * detection and only check whether its place is still occupied, for a
+ * limited time after which it falls back to the full detection.
+ * Once found, the target is not detected again: the worker checks about
+ * once a second that the house is still in place, and only runs a new
+ * detection when it moved.
+ */
+public class DetectionPipeline implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(DetectionPipeline.class.getName());
+	private static final long FRAME_TIMEOUT_MS = 500;
+	// Consecutive frames without any stone before the empty sheet reference is refreshed
+	private static final int EMPTY_FRAMES_FOR_REFERENCE = 5;
+	private static final long TARGET_VALIDATION_INTERVAL_NS = 1_000_000_000L;
+	// Longest removal check before the full detection takes over again
+	private static final long MAX_WATCH_NS = 10_000_000_000L;
+	private static final Metrics.Counter detectedFrames = Metrics.getInstance().counter("detection.frames");
+	private static final Metrics.Counter skippedFrameCount = Metrics.getInstance().counter("pipeline.skippedFrames");
+	private static final Metrics.Counter droppedResultCount = Metrics.getInstance().counter("pipeline.droppedResults");
+	private static final Metrics.Histogram detectionLatency = Metrics.getInstance().histogram("detection.latency");
+	private static final Metrics.Histogram frameAge = Metrics.getInstance().histogram("frame.age");
+
+	private final FrameBus frameBus;
+	private final ImageHandler handler;
+	private final Object lock = new Object();
+	private FrameResult latestResult;
+	private Thread detectionThread;
+	private volatile boolean running;
+	private volatile boolean targetRequested;
+	private final RegionOccupancy occupancy = new RegionOccupancy();
+	private volatile int[] watchedPosition;
+	private int[] currentWatch;
+	private long watchStart;
+	private boolean watchExpired;
+	private int emptyFrames;
+	private final TargetCache targetCache = new TargetCache();
+	private long lastTargetValidation;
+
+	// Statistics, guarded by lock
+	private long processedFrames;
+	private long skippedFrames;
+	private long droppedResults;
+	private long paintedResults;
+	private long targetDetections;
+	private double detectionLatencySum;
+	private double detectionLatencyMax;
+	private double endToEndLatencySum;
+	private double endToEndLatencyMax;
+	private double lastEndToEndLatency;
+
+	/**
+	 * Creates a detection pipeline reading frames from the given bus.
+	 * No thread is started until {@link #start()} is called.
+	 *
+	 * @param frameBus Bus the camera frames are published to, or null if frames
+	 *                 are only passed to {@link #process(long, long, Mat)}
+	 * @param handler  Detector used by the worker thread
+	 */
+	public DetectionPipeline(FrameBus frameBus, ImageHandler handler) {
+		this.frameBus = frameBus;
+		this.handler = handler;
+	}
+
+	/**
+	 * Starts the detection worker thread.
+	 * Calling this method on a running pipeline has no effect.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		detectionThread = new Thread(this::detectionLoop, "frame-detection");
+		detectionThread.setDaemon(true);
+		detectionThread.start();
+	}
+
+	/**
+	 * Asks the worker to look for the target on the next frames, until it is found.
+	 */
+	public void requestTarget() {
+		targetRequested = true;
+	}
+
+	/**
+	 * Switches the worker to the removal check: instead of detecting the stones,
+	 * it compares the place of the given stone with the empty sheet, which
+	 * takes a fraction of a millisecond. Falls back to the full detection as
+	 * long as no frame of the empty sheet has been seen, and for good when the
+	 * place is still occupied after ten seconds.
+	 *
+	 * @param position Position [x,y] of the stone expected to be removed
+	 */
+	public void watchRemoval(int[] position) {
+		watchedPosition = position == null ? null : position.clone();
+	}
+
+	/**
+	 * Goes back to the full detection after {@link #watchRemoval(int[])}.
+	 */
+	public void stopWatching() {
+		watchedPosition = null;
+	}
+
+	/**
+	 * Detection loop run by the worker thread.
+	 * Always processes the most recent frame; frames published while a
+	 * detection is running are skipped. Releases the working buffers of the
+	 * thread when the pipeline is closed.
+	 */
+	private void detectionLoop() {
+		long lastSequence = 0;
+		while (running) {
+			try {
+				long sequence = frameBus.awaitFrame(lastSequence, FRAME_TIMEOUT_MS);
+				if (sequence == lastSequence) {
+					continue;
+				}
+				// Read before the copy: if a newer frame slips in, the latency is overestimated, never hidden
+				long captureTimestamp = frameBus.getTimestamp();
+				Mat frame = new Mat();
+				sequence = frameBus.copyLatestFrame(frame);
+				long skipped = lastSequence == 0 ? 0 : sequence - lastSequence - 1;
+				lastSequence = sequence;
+
+				publish(detect(sequence, captureTimestamp, frame), skipped);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "Error during frame detection", e);
+			}
+		}
+		DetectionContext.releaseCurrent();
+	}
+
+	/**
+	 * Runs the detection on one frame on the calling thread, without the
+	 * worker thread and its hand-offs, for instance to replay recorded frames
+	 * as fast as they can be processed. The frame is counted in the statistics
+	 * like the frames of the worker.
+	 *
+	 * @param sequence         Sequence number of the frame
+	 * @param captureTimestamp Time the frame was captured, in {@link System#nanoTime()} units
+	 * @param frame            The frame, handed over to the result
+	 * @return The detection result, to be released by the caller
+	 */
+	public FrameResult process(long sequence, long captureTimestamp, Mat frame) {
+		long start = System.nanoTime();
+		FrameResult result = detect(sequence, captureTimestamp, frame);
+		// Capture times of replayed frames are not on the clock of the machine
+		count((System.nanoTime() - start) / 1e6, 0);
+		return result;
+	}
+
+	/**
+	 * Runs the detection on one frame.
+	 *
+	 * @param sequence         Sequence number of the frame
+	 * @param captureTimestamp Time the frame was published
+	 * @param frame            The frame, handed over to the result
+	 * @return The detection result
+	 */
+	private FrameResult detect(long sequence, long captureTimestamp, Mat frame) {
+		int[] watched = watchedPosition;
+		if (watched != currentWatch) {
+			currentWatch = watched;
+			watchStart = captureTimestamp;
+			watchExpired = false;
+		}
+		if (watched != null && !watchExpired && captureTimestamp - watchStart > MAX_WATCH_NS) {
+			// A place that never looks empty hints at a stale reference, e.g. after a change of light
+			logger.info(String.format("Removal check of (%d, %d) timed out, back to full detection", watched[0],
+					watched[1]));
+			watchExpired = true;
+			occupancy.reset();
+		}
+		if (watchExpired) {
+			watched = null;
+		}
+		if (watched != null) {
+			Boolean occupied = occupancy.isOccupied(frame, watched);
+			if (occupied != null) {
+				return new FrameResult(sequence, captureTimestamp, System.nanoTime(), frame,
+						Collections.emptyList(), occupied ? watched : null, ImageHandler.getTargetPosition(),
+						occupied);
+			}
+		}
+
+		if (ImageHandler.getTargetStyle() != 2) {
+			if (targetRequested) {
+				int[] target = detectTarget(frame);
+				if (target != null) {
+					targetCache.store(frame, target);
+					targetRequested = false;
+					lastTargetValidation = captureTimestamp;
+				}
+			} else if (captureTimestamp - lastTargetValidation >= TARGET_VALIDATION_INTERVAL_NS) {
+				lastTargetValidation = captureTimestamp;
+				validateTarget(frame);
+			}
+		} else if (ImageHandler.getTargetPosition() == null) {
+			// Nothing to detect: the stones are searched around the virtual target
+			ImageHandler.setTargetPosition(ImageHandler.getVirtualTargetPosition());
+		}
+		int[] tokenPosition = handler.getTokenPosition(frame);
+		// Same frame, answered by the motion gate
+		List<DetectedStone> stones = handler.getStonePositions(frame);
+
+		// A sheet seen empty for a few frames becomes the reference of the removal
+		// check, and is slowly blended into the background model
+		emptyFrames = stones.isEmpty() ? emptyFrames + 1 : 0;
+		if (emptyFrames >= EMPTY_FRAMES_FOR_REFERENCE && watched == null) {
+			occupancy.updateReference(frame);
+			ImageHandler.getBackgroundModel().update(frame);
+			emptyFrames = 0;
+		}
+		return new FrameResult(sequence, captureTimestamp, System.nanoTime(), frame, stones, tokenPosition,
+				ImageHandler.getTargetPosition(), null);
+	}
+
+	/**
+	 * Runs a full detection of the target and counts it.
+	 *
+	 * @param frame Frame to search
+	 * @return Target position [x,y], or null if not found
+	 */
+	private int[] detectTarget(Mat frame) {
+		synchronized (lock) {
+			targetDetections++;
+		}
+		return ImageHandler.getTargetPosition(frame);
+	}
+
+	/**
+	 * Checks that the cached target is still in place, and detects it again
+	 * if it is not. When the new detection fails too, for instance while a
+	 * hand hides the house, the last known position is kept.
+	 *
+	 * @param frame Frame to check
+	 */
+	private void validateTarget(Mat frame) {
+		int[] cached = targetCache.getPosition();
+		if (cached == null || targetCache.validate(frame)) {
+			return;
+		}
+		double score = targetCache.getLastScore();
+		int[] target = detectTarget(frame);
+		if (target != null) {
+			targetCache.store(frame, target);
+			logger.info(String.format("Target moved from (%d, %d) to (%d, %d), correlation %.2f", cached[0],
+					cached[1], target[0], target[1], score));
+		} else {
+			ImageHandler.setTargetPosition(cached);
+		}
+	}
+
+	/**
+	 * Makes a result available to the display, dropping the previous one if
+	 * it was never taken, and records it with the frames of the session.
+	 *
+	 * @param result  New result
+	 * @param skipped Number of frames skipped since the previous result
+	 */
+	private void publish(FrameResult result, long skipped) {
+		FrameResult stale;
+		count(result.getDetectionLatencyMillis(), skipped);
+		SessionRecorder recorder = frameBus.getRecorder();
+		if (recorder != null) {
+			recorder.recordDetection(result);
+		}
+		synchronized (lock) {
+			stale = latestResult;
+			latestResult = result;
+			if (stale != null) {
+				droppedResults++;
+				droppedResultCount.increment();
+			}
+		}
+		if (stale != null) {
+			stale.release();
+		}
+	}
+
+	/**
+	 * Adds a detection to the statistics.
+	 *
+	 * @param latency Time from the capture of the frame to its detection result, in milliseconds
+	 * @param skipped Number of frames skipped since the previous result
+	 */
+	private void count(double latency, long skipped) {
+		detectedFrames.increment();
+		skippedFrameCount.add(skipped);
+		detectionLatency.record((long) (latency * 1e6));
+		synchronized (lock) {
+			processedFrames++;
+			skippedFrames += skipped;
+			detectionLatencySum += latency;
+			detectionLatencyMax = Math.max(detectionLatencyMax, latency);
+		}
+	}
+
+	/**
+	 * Takes the latest detection result, if a new one is available.
+	 * The caller owns the result and must release it once painted.
+	 *
+	 * @return The newest result not taken yet, or null if there is none
+	 */
+	public FrameResult takeResult() {
+		synchronized (lock) {
+			FrameResult result = latestResult;
+			latestResult = null;
+			return result;
+		}
+	}
+
+	/**
+	 * Records that a result has been painted, to measure the end-to-end latency
+	 * from capture to display.
+	 *
+	 * @param result Result that has just been painted
+	 */
+	public void recordPainted(FrameResult result) {
+		long age = System.nanoTime() - result.getCaptureTimestamp();
+		frameAge.record(age);
+		double latency = age / 1e6;
+		synchronized (lock) {
+			paintedResults++;
+			endToEndLatencySum += latency;
+			endToEndLatencyMax = Math.max(endToEndLatencyMax, latency);
+			lastEndToEndLatency = latency;
+		}
+	}
+
+	/**
+	 * Gets the number of frames that went through the detection.
+	 *
+	 * @return Number of processed frames
+	 */
+	public long getProcessedFrames() {
+		synchronized (lock) {
+			return processedFrames;
+		}
+	}
+
+	/**
+	 * Gets the number of camera frames published while the detection was busy.
+	 *
+	 * @return Number of frames never processed
+	 */
+	public long getSkippedFrames() {
+		synchronized (lock) {
+			return skippedFrames;
+		}
+	}
+
+	/**
+	 * Gets the number of results replaced before the display took them.
+	 *
+	 * @return Number of results never painted
+	 */
+	public long getDroppedResults() {
+		synchronized (lock) {
+			return droppedResults;
+		}
+	}
+
+	/**
+	 * Gets the number of full target detections run by the worker.
+	 *
+	 * @return Number of target detections, first one included
+	 */
+	public long getTargetDetections() {
+		synchronized (lock) {
+			return targetDetections;
+		}
+	}
+
+	/**
+	 * Gets the average time from capture to the end of detection.
+	 *
+	 * @return Mean latency in milliseconds, 0 if no frame was processed
+	 */
+	public double getMeanDetectionLatency() {
+		synchronized (lock) {
+			return processedFrames == 0 ? 0 : detectionLatencySum / processedFrames;
+		}
+	}
+
+	/**
+	 * Gets the average time from capture to display.
+	 *
+	 * @return Mean latency in milliseconds, 0 if no result was painted
+	 */
+	public double getMeanEndToEndLatency() {
+		synchronized (lock) {
+			return paintedResults == 0 ? 0 : endToEndLatencySum / paintedResults;
+		}
+	}
+
+	/**
+	 * Gets the time from capture to display of the last painted result.
+	 *
+	 * @return Latency in milliseconds, 0 if no result was painted
+	 */
+	public double getLastEndToEndLatency() {
+		synchronized (lock) {
+			return lastEndToEndLatency;
+		}
+	}
+
+	/**
+	 * Checks whether the worker thread is running.
+	 *
+	 * @return true if the pipeline is started
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Stops the worker thread and releases the pending result.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (detectionThread != null) {
+			detectionThread.interrupt();
+			try {
+				detectionThread.join(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			detectionThread = null;
+		}
+		FrameResult pending = takeResult();
+		if (pending != null) {
+			pending.release();
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (lock) {
+			return String.format(
+					"Detection pipeline: %d frames processed, %d skipped, %d results dropped, %d target detections; "
+							+ "detection %.1f ms mean / %.1f ms max, capture to display %.1f ms mean / %.1f ms max",
+					processedFrames, skippedFrames, droppedResults, targetDetections, getMeanDetectionLatency(),
+					detectionLatencyMax, getMeanEndToEndLatency(), endToEndLatencyMax);
+		}
+	}
+}
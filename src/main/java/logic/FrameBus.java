@@ -0,0 +1,218 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * In-memory hand-off of camera frames between the capture thread and its consumers.
+ * Holds only the latest frame together with a sequence number, so readers
+ * get a decoded image without going through a JPEG file on disk.
+ * A debug mode can still dump every published frame to a file, and a
+ * {@link SessionRecorder} can record every frame of a session.
+ */
+public class FrameBus {
+	private static final Logger logger = Logger.getLogger(FrameBus.class.getName());
+	private static final Metrics.Counter capturedFrames = Metrics.getInstance().counter("capture.frames");
+
+	private final Object lock = new Object();
+	private final Mat latestFrame = new Mat();
+	private long sequence;
+	private long timestamp;
+
+	private volatile boolean debugDump = Boolean.getBoolean("curling.debugFrames");
+	private volatile String debugFilename = "image.jpg";
+	private volatile SessionRecorder recorder;
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	// Created after the native library is loaded, the constructor allocates a Mat
+	private static final FrameBus instance = new FrameBus();
+
+	/**
+	 * Gets the frame bus shared by the whole application.
+	 *
+	 * @return The shared FrameBus instance
+	 */
+	public static FrameBus getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Publishes a new frame, replacing the previous one.
+	 * The frame is copied, so the caller can reuse its Mat for the next capture.
+	 *
+	 * @param frame Frame read from the camera
+	 */
+	public void publish(Mat frame) {
+		long published;
+		long publishedAt;
+		synchronized (lock) {
+			frame.copyTo(latestFrame);
+			timestamp = System.nanoTime();
+			sequence++;
+			published = sequence;
+			publishedAt = timestamp;
+			lock.notifyAll();
+		}
+		capturedFrames.increment();
+		SessionRecorder sessionRecorder = recorder;
+		if (sessionRecorder != null) {
+			sessionRecorder.recordFrame(frame, published, publishedAt);
+		}
+		if (debugDump) {
+			dumpToDisk(frame);
+		}
+	}
+
+	/**
+	 * Returns a copy of the latest frame.
+	 * The copy belongs to the caller, who may draw on it freely.
+	 *
+	 * @return Copy of the latest frame, or null if no frame was published yet
+	 */
+	public Mat getLatestFrame() {
+		synchronized (lock) {
+			return sequence == 0 ? null : latestFrame.clone();
+		}
+	}
+
+	/**
+	 * Copies the latest frame into a Mat owned by the caller.
+	 * Lets consumers that poll continuously reuse the same buffer.
+	 *
+	 * @param destination Mat receiving the frame
+	 * @return Sequence number of the copied frame, or 0 if no frame was published yet
+	 */
+	public long copyLatestFrame(Mat destination) {
+		synchronized (lock) {
+			if (sequence != 0) {
+				latestFrame.copyTo(destination);
+			}
+			return sequence;
+		}
+	}
+
+	/**
+	 * Waits until a frame newer than the given sequence number is published.
+	 *
+	 * @param lastSequence Sequence number of the last frame seen by the caller
+	 * @param timeoutMs    Maximum time to wait in milliseconds
+	 * @return Sequence number of the latest frame once it is newer, or the
+	 *         current sequence number if the timeout expired
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public long awaitFrame(long lastSequence, long timeoutMs) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		synchronized (lock) {
+			while (sequence <= lastSequence) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				lock.wait(remaining);
+			}
+			return sequence;
+		}
+	}
+
+	/**
+	 * Gets the sequence number of the latest frame.
+	 *
+	 * @return Number of frames published so far
+	 */
+	public long getSequence() {
+		synchronized (lock) {
+			return sequence;
+		}
+	}
+
+	/**
+	 * Gets the time at which the latest frame was published.
+	 *
+	 * @return Timestamp in {@link System#nanoTime()} units, or 0 if no frame yet
+	 */
+	public long getTimestamp() {
+		synchronized (lock) {
+			return timestamp;
+		}
+	}
+
+	/**
+	 * Writes a frame to the debug file.
+	 * The frame is written to a temporary file first and then moved in place,
+	 * so readers of the file never see a half-written image.
+	 *
+	 * @param frame Frame to write
+	 */
+	private void dumpToDisk(Mat frame) {
+		File target = new File(debugFilename);
+		File temporary = new File(target.getAbsoluteFile().getParentFile(), "." + target.getName());
+		if (!Imgcodecs.imwrite(temporary.getPath(), frame)) {
+			logger.log(Level.WARNING, "Unable to write debug frame " + temporary);
+			return;
+		}
+		try {
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to move debug frame to " + target, e);
+		}
+	}
+
+	/**
+	 * Checks whether published frames are also dumped to disk.
+	 *
+	 * @return true if debug dumping is enabled
+	 */
+	public boolean isDebugDump() {
+		return debugDump;
+	}
+
+	/**
+	 * Enables or disables dumping every published frame to disk.
+	 * Can also be enabled at startup with {@code -Dcurling.debugFrames=true}.
+	 *
+	 * @param debugDump true to write frames to the debug file
+	 */
+	public void setDebugDump(boolean debugDump) {
+		this.debugDump = debugDump;
+	}
+
+	/**
+	 * Sets the file frames are dumped to in debug mode.
+	 *
+	 * @param debugFilename Path of the debug image file
+	 */
+	public void setDebugFilename(String debugFilename) {
+		this.debugFilename = debugFilename;
+	}
+
+	/**
+	 * Gets the recorder the published frames are sent to.
+	 *
+	 * @return The session recorder, or null if the session is not recorded
+	 */
+	public SessionRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Sets the recorder the published frames are sent to. The recorder never
+	 * blocks the capture thread, it drops frames when it falls behind.
+	 *
+	 * @param recorder Session recorder, or null to stop sending frames
+	 */
+	public void setRecorder(SessionRecorder recorder) {
+		this.recorder = recorder;
+	}
+}
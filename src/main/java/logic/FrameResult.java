@@ -0,0 +1,154 @@
+package logic;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opencv.core.Mat;
+
+/**
+ * Output of the detection stage for one camera frame.
+ * Carries the frame itself, so what is painted matches what was detected,
+ * along with the stones found and the timestamps needed to measure the
+ * latency of each stage.
+ */
+public class FrameResult {
+	// Frames held by results not released yet, exported as the "mat.frames" gauge
+	private static final LongAdder liveFrames = new LongAdder();
+
+	static {
+		Metrics.getInstance().gauge("mat.frames", liveFrames::sum);
+	}
+
+	private final long sequence;
+	private final long captureTimestamp;
+	private final long detectionTimestamp;
+	private final Mat frame;
+	private final List<DetectedStone> stones;
+	private final int[] tokenPosition;
+	private final int[] targetPosition;
+	private final Boolean regionOccupied;
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	/**
+	 * Creates a detection result.
+	 *
+	 * @param sequence           Sequence number of the frame on the frame bus
+	 * @param captureTimestamp   Time the frame was published, in {@link System#nanoTime()} units
+	 * @param detectionTimestamp Time the detection finished, in {@link System#nanoTime()} units
+	 * @param frame              The frame, owned by the result
+	 * @param stones             Stones found in the frame
+	 * @param tokenPosition      Position of the most confident stone, or null if none
+	 * @param targetPosition     Target position known when the frame was processed, or null
+	 * @param regionOccupied     Result of the removal check, or null if the full detection ran
+	 */
+	public FrameResult(long sequence, long captureTimestamp, long detectionTimestamp, Mat frame,
+			List<DetectedStone> stones, int[] tokenPosition, int[] targetPosition, Boolean regionOccupied) {
+		this.sequence = sequence;
+		this.captureTimestamp = captureTimestamp;
+		this.detectionTimestamp = detectionTimestamp;
+		this.frame = frame;
+		this.stones = stones;
+		this.tokenPosition = tokenPosition;
+		this.targetPosition = targetPosition;
+		this.regionOccupied = regionOccupied;
+		liveFrames.increment();
+	}
+
+	/**
+	 * Gets the sequence number of the frame.
+	 *
+	 * @return Sequence number on the frame bus
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the time the frame was captured.
+	 *
+	 * @return Timestamp in {@link System#nanoTime()} units
+	 */
+	public long getCaptureTimestamp() {
+		return captureTimestamp;
+	}
+
+	/**
+	 * Gets the time the detection finished.
+	 *
+	 * @return Timestamp in {@link System#nanoTime()} units
+	 */
+	public long getDetectionTimestamp() {
+		return detectionTimestamp;
+	}
+
+	/**
+	 * Gets the time between the capture of the frame and the end of its detection.
+	 *
+	 * @return Latency in milliseconds
+	 */
+	public double getDetectionLatencyMillis() {
+		return (detectionTimestamp - captureTimestamp) / 1e6;
+	}
+
+	/**
+	 * Gets the frame the detection ran on.
+	 * The frame belongs to whoever took the result, who may draw on it and
+	 * must {@link #release()} it afterwards.
+	 *
+	 * @return The camera frame
+	 */
+	public Mat getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Gets every stone found in the frame.
+	 *
+	 * @return Unmodifiable list of stones, empty if none
+	 */
+	public List<DetectedStone> getStones() {
+		return stones;
+	}
+
+	/**
+	 * Gets the position of the most confident stone.
+	 *
+	 * @return Token position [x,y], or null if no stone was found
+	 */
+	public int[] getTokenPosition() {
+		return tokenPosition;
+	}
+
+	/**
+	 * Gets the target position known when the frame was processed.
+	 *
+	 * @return Target position [x,y], or null if the target has not been found yet
+	 */
+	public int[] getTargetPosition() {
+		return targetPosition;
+	}
+
+	/**
+	 * Gets the result of the removal check, when the pipeline was watching a
+	 * stone instead of running the full detection
+	 * (see {@link DetectionPipeline#watchRemoval(int[])}).
+	 * The stone list is empty in that case.
+	 *
+	 * @return true if the watched stone is still there, false if its place is
+	 *         empty, null if the full detection ran on this frame
+	 */
+	public Boolean getRegionOccupied() {
+		return regionOccupied;
+	}
+
+	/**
+	 * Releases the native memory of the frame.
+	 */
+	public void release() {
+		if (released.compareAndSet(false, true)) {
+			liveFrames.decrement();
+		}
+		frame.release();
+	}
+}
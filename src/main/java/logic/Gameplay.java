@@ -1,20 +1,38 @@
 package logic;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.opencv.core.Mat;
-import org.opencv.imgcodecs.Imgcodecs;
 
 /**
  * Main game logic controller that manages the game state and rules.
  * Handles turn management, token placement, scoring, and game progression
  * through multiple rounds.
+ * Every change of the game state goes through a {@link MatchListener}, which
+ * applies it and records it in the {@link MatchJournal} of the match, so a match
+ * interrupted by a crash or by the calibration screen can be rebuilt by
+ * replaying its journal.
  */
 public class Gameplay {
+	private static final Logger logger = Logger.getLogger(Gameplay.class.getName());
+	private static final Path JOURNAL_PATH = Paths.get("match.journal");
 	private static ImageHandler handler;
 	private static int NB_TURNS = 8;
 	private static int MAX_ROUNDS = 2;
+	// Returned by getAdvantage when the two closest stones cannot be told apart
+	public static final int TOO_CLOSE_TO_CALL = -2;
+	// Standard deviations separating two distances before the closer one is trusted
+	private static final double CALL_MARGIN = 2.0;
 
 	private int[] targetPosition;
-	private Token[] tokens;
+	private final Board board;
 	private int currentPlayer;
 	private int currentTurn;
 	private int currentRound;
@@ -22,23 +40,22 @@ public class Gameplay {
 	private int[] playerScoreRound;
 	private boolean gameFinished;
 	private static Gameplay instance;
+	private final Events events = new Events();
+	private MatchJournal journal;
+	private int[] collisions = new int[0]; // one slot per stone of an end, see resizeBoard
 
 	/**
 	 * Initializes a new game session with default settings.
-	 * Creates tokens for both players and sets up initial game state.
+	 * Creates the board of both players and sets up initial game state.
 	 */
 	public Gameplay() {
 		if (handler == null) {
 			handler = new ImageHandler();
 		}
 		instance = this;
-		tokens = new Token[NB_TURNS];
-		for (int i = 0; i < NB_TURNS; i++) {
-			if (i % 2 == 0)
-				tokens[i] = new Token(new int[] { 0, 0 }, 0, 0);
-			else
-				tokens[i] = new Token(new int[] { 0, 0 }, 1, 0);
-		}
+		ImageHandler.getMotionGate().resetCounters();
+		board = new Board(NB_TURNS);
+		resizeBoard(NB_TURNS);
 		currentPlayer = 1;
 		currentTurn = 0;
 		currentRound = 1;
@@ -46,75 +63,159 @@ public class Gameplay {
 		setPlayerScoreRound(new int[] { 0, 0 });
 	}
 
+	/**
+	 * Starts a new match recorded in a new journal, replacing the journal of
+	 * any previous match. The match is played without a journal if the file
+	 * cannot be created.
+	 *
+	 * @return The new game
+	 */
+	public static Gameplay newMatch() {
+		Gameplay gameplay = new Gameplay();
+		try {
+			gameplay.journal = MatchJournal.create(JOURNAL_PATH);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to create match journal " + JOURNAL_PATH, e);
+		}
+		gameplay.events.matchStarted(NB_TURNS, MAX_ROUNDS);
+		gameplay.flushJournal();
+		return gameplay;
+	}
+
+	/**
+	 * Rebuilds the match left unfinished in the journal, and goes on
+	 * recording it in the same journal.
+	 *
+	 * @return The game as it was after the last recorded action, or null if
+	 *         there is no journal or its match is over
+	 */
+	public static Gameplay resumeMatch() {
+		Gameplay gameplay = new Gameplay();
+		try {
+			long length = MatchJournal.replay(JOURNAL_PATH, gameplay.events);
+			if (length < 0 || gameplay.isGameFinished()) {
+				return null;
+			}
+			gameplay.journal = MatchJournal.reopen(JOURNAL_PATH, length);
+			if (gameplay.targetPosition != null) {
+				// Stones are ranked around the target until it is detected again
+				ImageHandler.setTargetPosition(gameplay.targetPosition.clone());
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to replay match journal " + JOURNAL_PATH, e);
+			return null;
+		}
+		logger.info(String.format("Match resumed: round %d, turn %d, score %d - %d", gameplay.currentRound,
+				gameplay.currentTurn, gameplay.playerScoreRound[0], gameplay.playerScoreRound[1]));
+		return gameplay;
+	}
+
+	/**
+	 * Stops recording the match. The journal is kept and the match can be
+	 * resumed with {@link #resumeMatch()}.
+	 */
+	public void closeJournal() {
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+
+	/**
+	 * Gives up the match: records that it is over, so it is not resumed.
+	 */
+	public void abandon() {
+		if (!gameFinished) {
+			events.matchEnded();
+		}
+		closeJournal();
+	}
+
+	/**
+	 * Writes the events of the last game action to the journal.
+	 */
+	private void flushJournal() {
+		if (journal != null) {
+			journal.flush();
+		}
+	}
+
 	/**
 	 * Processes the end of a player's turn.
 	 * Updates current player, turn counter, and calculates player advantage.
 	 */
 	public void endTurn() {
-		setPlayerAdvantage(getAdvantage());
-		this.setCurrentTurn(this.getCurrentTurn() + 1);
-		this.setCurrentPlayer(this.getCurrentPlayer() + 1);
+		events.turnEnded(getAdvantage());
 
 		// Check if we reached the configured number of turns
 		if (currentTurn >= NB_TURNS) {
 			endRound();
 		}
-		
+		flushJournal();
 	}
 
 	/**
 	 * Gets the current player advantage based on token positions.
-	 * Determines which player has a token closest to the target.
+	 * Determines which player has a token closest to the target. When the
+	 * closest stone of the other player is not farther by more than the
+	 * measurement uncertainty, the advantage is not given to either player.
+	 * Ranking and gap are both measured from the current target centre, so
+	 * they agree after the target moved or its sub-pixel fit was dropped.
 	 * 
 	 * @return 0 for player 1's advantage, 1 for player 2's advantage, -1 if no
-	 *         valid tokens
+	 *         valid tokens, or {@link #TOO_CLOSE_TO_CALL}
 	 */
 	public int getAdvantage() {
-		int closestTokenIndex = -1;
-		double minDistance = Double.MAX_VALUE; // Using Double.MAX_VALUE instead of magic number
-
 		// Find the token closest to target
-		if (currentTurn == 0) {
-			return 0;
-		}
-		for (int i = 0; i < currentTurn+1; i++) {
-			if (tokens[i] != null && tokens[i].getPosition()[0] != 0) { // Check for valid token
-				double distance = tokens[i].getDistanceToTarget();
-				if (distance >= 0 && distance < minDistance) { // Check for valid distance
-					minDistance = distance;
-					closestTokenIndex = i;
-				}
-			}
+		double[] button = ImageHandler.getTargetCenter();
+		if (button == null) {
+			return -1;
 		}
+		int closestTokenIndex = board.nearest(button[0], button[1], -1);
 
 		// Log the closest distance found
 		if (closestTokenIndex != -1) {
-			System.out.println("Closest token distance: " + minDistance);
-			return closestTokenIndex % 2; // Return player number (0 or 1)
+			double minDistance = distanceTo(closestTokenIndex, button);
+			logger.log(Level.FINE, "Closest token distance: {0}", minDistance);
+			// Closest stone of the other player, who plays every other turn
+			int rivalIndex = board.nearest(button[0], button[1], 1 - closestTokenIndex % 2);
+			if (rivalIndex != -1) {
+				double gap = distanceTo(rivalIndex, button) - minDistance;
+				double uncertainty = Math.hypot(board.getUncertainty(closestTokenIndex),
+						board.getUncertainty(rivalIndex));
+				if (gap < CALL_MARGIN * uncertainty) {
+					logger.info(String.format("Too close to call: %.2f px apart, +/-%.2f px", gap, uncertainty));
+					return TOO_CLOSE_TO_CALL;
+				}
+			}
+			return board.getPlayer(closestTokenIndex); // Owner of the stone (0 or 1)
 		}
 
 		return -1; // Return -1 if no valid tokens found
 	}
 
+	/**
+	 * Calculates the distance between a stone of the board and a point.
+	 *
+	 * @param index Turn of the stone
+	 * @param point Coordinates [x,y] of the point
+	 * @return The distance in pixels
+	 */
+	private double distanceTo(int index, double[] point) {
+		return Math.hypot(board.getX(index) - point[0], board.getY(index) - point[1]);
+	}
+
 	/**
 	 * Handles the end of a game round.
-	 * Resets tokens and updates scores if game hasn't finished.
+	 * Clears the board and updates scores if game hasn't finished.
 	 */
 	public void endRound() {
-		System.out.println("Starting new round");
+		logger.info("Starting new round");
 		incrementPlayerScore();
 		if (currentRound == MAX_ROUNDS) {
 			endOfTheGame();
 		} else {
-			// Create new token array with current NB_TURNS size
-			tokens = new Token[NB_TURNS];
-			for (int i = 0; i < NB_TURNS; i++) {
-				if (i % 2 == 0)
-					tokens[i] = new Token(new int[] { 0, 0 }, 0, 0);
-				else
-					tokens[i] = new Token(new int[] { 0, 0 }, 1, 0);
-			}
-			incrementRound();
+			events.roundEnded();
 		}
 	}
 
@@ -124,71 +225,178 @@ public class Gameplay {
 	 * @return int[] Array containing token coordinates, or null if not found
 	 */
 	public int[] checkToken() {
-		Mat image = Imgcodecs.imread("./image.jpg");
-		int[] tokenPosition = handler.getTokenPosition(image);
+		Mat image = FrameBus.getInstance().getLatestFrame();
+		if (image == null) {
+			return null;
+		}
+		int[] tokenPosition = checkToken(image);
+		image.release();
 
 		return tokenPosition;
 	}
 
 	/**
-	 * Displays the current positions of all tokens in the game.
-	 * Shows coordinates for each player's tokens in console output.
+	 * Detects token position in the given camera frame.
+	 *
+	 * @param image Mat object containing the current camera frame
+	 * @return int[] Array containing token coordinates, or null if not found
+	 */
+	public int[] checkToken(Mat image) {
+		return handler.getTokenPosition(image);
+	}
+
+	/**
+	 * Logs the current positions of all tokens in the game, at FINE level.
+	 * Nothing is formatted when that level is disabled.
 	 */
 	public void displayTokens() {
-		for (int k = 0; k < tokens.length; k += 2) {
-			System.out.println("Tour " + (k + 1) + " (J" + (tokens[k].getPlayer() + 1) + ") : "
-					+ tokens[k].getPosition()[0] + ", " + tokens[k].getPosition()[1]);
-			System.out.println("Tour " + (k + 2) + " (J" + (tokens[k + 1].getPlayer() + 1) + ") : "
-					+ tokens[k + 1].getPosition()[0] + ", " + tokens[k + 1].getPosition()[1]);
+		if (!logger.isLoggable(Level.FINE)) {
+			return;
+		}
+		for (int k = 0; k < board.size(); k++) {
+			int[] position = board.getPosition(k);
+			logger.fine("Tour " + (k + 1) + " (J" + (board.getPlayer(k) + 1) + ") : " + position[0] + ", "
+					+ position[1]);
 		}
 	}
 
 	/**
 	 * Processes token detection and placement on the game board.
-	 * Handles collision detection with existing tokens.
+	 * All stones of the frame are detected at once: stones already on the sheet
+	 * are matched to their tokens and updated, and the most confident remaining
+	 * stone becomes the token of the current turn.
+	 * Handles collision detection with the tokens that are no longer on the sheet.
 	 *
 	 * @param image Mat object containing the current camera frame
 	 */
 	public void findToken(Mat image) {
-		int[] tokenPosition = handler.getTokenPosition(image);
-		if (tokenPosition != null) {
-			System.out.println("Token found!");
-			tokens[currentTurn] = new Token(tokenPosition, currentPlayer, handler.getDistanceToTarget());
+		findToken(handler.getStonePositions(image));
+	}
+
+	/**
+	 * Processes token placement from stones already detected, for instance by
+	 * the {@link DetectionPipeline} worker.
+	 *
+	 * @param stones Stones detected in the current camera frame
+	 */
+	public void findToken(List<DetectedStone> stones) {
+		List<DetectedStone> newStones = matchStones(stones);
+
+		DetectedStone newStone = null;
+		for (DetectedStone stone : newStones) {
+			if (newStone == null || stone.getConfidence() > newStone.getConfidence()) {
+				newStone = stone;
+			}
+		}
+		if (newStone != null) {
+			logger.info("Token found!");
+			events.stonePlaced(currentTurn, currentPlayer, (float) newStone.getX(), (float) newStone.getY(),
+					(float) ImageHandler.getDistanceToTarget(newStone),
+					(float) ImageHandler.getDistanceUncertainty(newStone));
 		} else {
-			System.out.println("Token not found...");
+			logger.info("Token not found...");
+			flushJournal();
 			return;
 		}
-		tokenPosition = null;
 
 		checkColision(currentTurn);
+		flushJournal();
 		displayTokens(); // Display token positions
 	}
 
+	/**
+	 * Matches detected stones against the tokens of the previous turns that are
+	 * still on the sheet. Matched tokens take the detected position; tokens on
+	 * the sheet with no matching stone have been knocked out and are removed.
+	 *
+	 * @param stones Stones detected in the current frame
+	 * @return Stones that do not belong to any previous token
+	 */
+	private List<DetectedStone> matchStones(List<DetectedStone> stones) {
+		List<DetectedStone> unmatched = new ArrayList<>(stones);
+		double matchDistance = ImageHandler.getTokenRadius();
+		for (int i = 0; i < currentTurn; i++) {
+			if (!board.isAlive(i) || !board.isOnSheet(i)) {
+				continue;
+			}
+			DetectedStone closest = null;
+			double minDistance = matchDistance;
+			for (DetectedStone stone : unmatched) {
+				double distance = Math.hypot(stone.getX() - board.getX(i), stone.getY() - board.getY(i));
+				if (distance < minDistance) {
+					minDistance = distance;
+					closest = stone;
+				}
+			}
+			if (closest != null) {
+				unmatched.remove(closest);
+				events.stoneMoved(i, (float) closest.getX(), (float) closest.getY(),
+						(float) ImageHandler.getDistanceToTarget(closest),
+						(float) ImageHandler.getDistanceUncertainty(closest));
+			} else {
+				events.stoneRemoved(i);
+			}
+		}
+		return unmatched;
+	}
+
+	/**
+	 * Records that no stone is left on the sheet.
+	 * Tokens of the previous turns are kept on the board but are no longer
+	 * expected to be seen in the camera frame.
+	 */
+	public void markSheetEmpty() {
+		events.sheetEmptied();
+		flushJournal();
+	}
+
+	/**
+	 * Records that the stone of the current turn has been taken off the sheet.
+	 * The token stays on the board, other stones are still expected in the frame.
+	 */
+	public void markTokenRemoved() {
+		if (currentTurn < board.size()) {
+			events.stoneLifted(currentTurn);
+			flushJournal();
+		}
+	}
+
 	/**
 	 * Checks for collisions between the current token and previously placed tokens.
-	 * Removes colliding tokens from the board.
+	 * Removes colliding tokens from the board. Tokens whose stone is still on
+	 * the sheet are skipped, their detected position is authoritative.
 	 *
 	 * @param turn Current turn number to check against previous turns
 	 */
 	public void checkColision(int turn) {
-		for (int i = 0; i < turn; i++) {
-
-			double distance = tokens[turn].getDistanceToToken(tokens[i]);
-			boolean colision = distance < 0.8 * Token.getRadius();
+		int hits = board.findCollisions(turn, 0.8 * Token.getRadius(), collisions);
+		for (int k = 0; k < hits; k++) {
+			events.stoneRemoved(collisions[k]);
+		}
+	}
 
-			if (colision) {
-				tokens[i].getPosition()[0] = 0;
-				tokens[i].getPosition()[1] = 0;
-			}
+	/**
+	 * Changes the number of stones of an end, and sizes the collision buffer
+	 * so that it can hold every stone of the board.
+	 *
+	 * @param nbTurns New number of stones
+	 */
+	private void resizeBoard(int nbTurns) {
+		board.resize(nbTurns);
+		if (collisions.length < board.size()) {
+			collisions = new int[board.size()];
 		}
 	}
 
 	/**
 	 * Marks the game as finished.
-	 * Sets the gameFinished flag to true.
+	 * Sets the gameFinished flag to true, closes the journal and logs how many
+	 * token detections the motion gate skipped during the match.
 	 */
 	public void endOfTheGame() {
-		setGameFinished(true);
+		events.matchEnded();
+		closeJournal();
+		logger.info(ImageHandler.getMotionGate().toString());
 	}
 
 	/**
@@ -198,29 +406,58 @@ public class Gameplay {
 	 * @param image Mat object containing the current camera frame
 	 */
 	public void findTarget(Mat image) {
+		if (targetPosition == null && ImageHandler.getTargetStyle() != 2) {
+			logger.log(Level.FINE, "Waiting for target...");
+			findTarget(ImageHandler.getTargetPosition(image));
+		} else {
+			findTarget((int[]) null);
+		}
+	}
+
+	/**
+	 * Sets the target position from a detection already made, for instance by
+	 * the {@link DetectionPipeline} worker. Once the target is known, only
+	 * follows a new position reported after the house moved.
+	 *
+	 * @param detectedTarget Detected target position [x,y], or null if not found
+	 */
+	public void findTarget(int[] detectedTarget) {
+		if (targetPosition != null && detectedTarget != null && ImageHandler.getTargetStyle() != 2
+				&& !Arrays.equals(targetPosition, detectedTarget)) {
+			events.targetLocked(detectedTarget[0], detectedTarget[1]);
+			flushJournal();
+			logger.info("Target moved!");
+		}
 		if (targetPosition == null) {
 			if (ImageHandler.getTargetStyle() == 2) {
-				targetPosition = new int[] { 640, 360 };
+				int[] virtualTarget = ImageHandler.getVirtualTargetPosition();
+				events.targetLocked(virtualTarget[0], virtualTarget[1]);
 			} else {
-				System.out.println("Waiting for target...");
-				targetPosition = ImageHandler.getTargetPosition(image);
-				if (targetPosition == null) {
-					System.out.println("Target not found...");
+				if (detectedTarget == null) {
+					logger.log(Level.FINE, "Target not found...");
 					return;
 				} else {
+					events.targetLocked(detectedTarget[0], detectedTarget[1]);
 					ImageHandler.setTargetPosition(targetPosition);
-					System.out.println("Target found!");
+					logger.info("Target found!");
 				}
 			}
+			flushJournal();
 		}
-		System.out.println("Target: " + targetPosition[0] + ", " + targetPosition[1]);
+		logger.log(Level.FINE, "Target: {0}, {1}", new Object[] { targetPosition[0], targetPosition[1] });
 	}
 
 	/**
 	 * Increments the score for the player who currently has the advantage.
+	 * No point is given when no player has it, for instance when the closest
+	 * stones were too close to call.
 	 */
 	public void incrementPlayerScore() {
-		this.playerScoreRound[getPlayerAdvantage()] += 1;
+		if (getPlayerAdvantage() < 0) {
+			logger.info("No point for this round");
+			return;
+		}
+		events.scoreIncremented(getPlayerAdvantage());
 	}
 
 	/**
@@ -244,23 +481,12 @@ public class Gameplay {
 	}
 
 	/**
-	 * Gets the array of all game tokens.
-	 * Getter for accessing all tokens in the current game.
+	 * Gets the board holding the stones of the current end.
 	 *
-	 * @return Array of Token objects
+	 * @return Board of the game
 	 */
-	public Token[] getTokens() {
-		return tokens;
-	}
-
-	/**
-	 * Sets the array of game tokens.
-	 * Setter for updating all tokens at once.
-	 *
-	 * @param tokens New array of Token objects
-	 */
-	public void setTokens(Token[] tokens) {
-		this.tokens = tokens;
+	public Board getBoard() {
+		return board;
 	}
 
 	/**
@@ -341,35 +567,24 @@ public class Gameplay {
 	 * Static utility methods for turn and round management
 	 */
 	/**
-	 * Increments the number of turns by 2 and resizes the tokens array accordingly.
-	 * Creates new tokens for both players in the added turns.
+	 * Increments the number of turns by 2 and resizes the board accordingly.
 	 */
 	public static void incrementNbTurns() {
 		NB_TURNS += 2;
-		if (instance != null && instance.tokens != null) {
-			Token[] newTokens = new Token[NB_TURNS];
-			System.arraycopy(instance.tokens, 0, newTokens, 0, instance.tokens.length);
-			for (int i = instance.tokens.length; i < NB_TURNS; i++) {
-				if (i % 2 == 0)
-					newTokens[i] = new Token(new int[] { 0, 0 }, 0, 0);
-				else
-					newTokens[i] = new Token(new int[] { 0, 0 }, 1, 0);
-			}
-			instance.tokens = newTokens;
+		if (instance != null) {
+			instance.resizeBoard(NB_TURNS);
 		}
 	}
 
 	/**
 	 * Decrements the number of turns by 2 if possible (minimum 4 turns).
-	 * Resizes the tokens array to match the new number of turns.
+	 * Resizes the board to match the new number of turns.
 	 */
 	public static void decrementNbTurns() {
 		if (NB_TURNS > 4) {
 			NB_TURNS -= 2;
-			if (instance != null && instance.tokens != null) {
-				Token[] newTokens = new Token[NB_TURNS];
-				System.arraycopy(instance.tokens, 0, newTokens, 0, NB_TURNS);
-				instance.tokens = newTokens;
+			if (instance != null) {
+				instance.resizeBoard(NB_TURNS);
 			}
 		}
 	}
@@ -500,4 +715,104 @@ public class Gameplay {
 	public void setGameFinished(boolean gameFinished) {
 		this.gameFinished = gameFinished;
 	}
+
+	/**
+	 * Applies the state transitions of the match, and records each of them in
+	 * the journal when one is open. Replaying a journal into it rebuilds the
+	 * state of the match.
+	 */
+	private class Events implements MatchListener {
+		@Override
+		public void matchStarted(int nbTurns, int maxRounds) {
+			NB_TURNS = nbTurns;
+			MAX_ROUNDS = maxRounds;
+			resizeBoard(nbTurns);
+			if (journal != null) {
+				journal.matchStarted(nbTurns, maxRounds);
+			}
+		}
+
+		@Override
+		public void targetLocked(int x, int y) {
+			targetPosition = new int[] { x, y };
+			if (journal != null) {
+				journal.targetLocked(x, y);
+			}
+		}
+
+		@Override
+		public void stonePlaced(int turn, int player, float x, float y, float distance, float uncertainty) {
+			board.place(turn, x, y, player, distance, uncertainty);
+			if (journal != null) {
+				journal.stonePlaced(turn, player, x, y, distance, uncertainty);
+			}
+		}
+
+		@Override
+		public void stoneMoved(int turn, float x, float y, float distance, float uncertainty) {
+			board.move(turn, x, y, distance, uncertainty);
+			if (journal != null) {
+				journal.stoneMoved(turn, x, y, distance, uncertainty);
+			}
+		}
+
+		@Override
+		public void stoneRemoved(int turn) {
+			board.remove(turn);
+			if (journal != null) {
+				journal.stoneRemoved(turn);
+			}
+		}
+
+		@Override
+		public void sheetEmptied() {
+			board.clearOnSheet();
+			if (journal != null) {
+				journal.sheetEmptied();
+			}
+		}
+
+		@Override
+		public void stoneLifted(int turn) {
+			board.setOnSheet(turn, false);
+			if (journal != null) {
+				journal.stoneLifted(turn);
+			}
+		}
+
+		@Override
+		public void turnEnded(int advantage) {
+			setPlayerAdvantage(advantage);
+			setCurrentTurn(currentTurn + 1);
+			setCurrentPlayer(currentPlayer + 1);
+			if (journal != null) {
+				journal.turnEnded(advantage);
+			}
+		}
+
+		@Override
+		public void roundEnded() {
+			board.clear();
+			incrementRound();
+			if (journal != null) {
+				journal.roundEnded();
+			}
+		}
+
+		@Override
+		public void scoreIncremented(int player) {
+			playerScoreRound[player] += 1;
+			if (journal != null) {
+				journal.scoreIncremented(player);
+			}
+		}
+
+		@Override
+		public void matchEnded() {
+			setGameFinished(true);
+			if (journal != null) {
+				journal.matchEnded();
+			}
+		}
+	}
 }
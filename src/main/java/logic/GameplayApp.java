@@ -1,7 +1,5 @@
 package logic;
 
-import java.io.File;
-
 import org.opencv.core.Core;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -21,6 +19,7 @@ import java.util.logging.SimpleFormatter;
  */
 public class GameplayApp extends Application {
     private static final Logger logger = Logger.getLogger(GameplayApp.class.getName());
+    private MetricsReporter metrics;
 
     static {
         // Set the path to the OpenCV native library
@@ -29,28 +28,20 @@ public class GameplayApp extends Application {
 
     /**
      * Initializes and starts the application components.
-     * Sets up continuous webcam capture in a separate thread and launches the UI interface.
+     * Opens the continuous webcam capture session, starts exporting the runtime
+     * metrics and launches the UI interface.
      *
      * @param primaryStage The primary stage for the application UI
      */
     @Override
     public void start(Stage primaryStage) {
         configureLogger();
+        metrics = MetricsReporter.startFromProperties();
         String filename = "image.jpg";
-        File file = new File(filename);
         String usbDeviceID = "USB\\VID_045E&PID_075D&MI_00\\7&BDE31B4&0&0000";
         
-        // Create a thread that continuously captures images until program termination
-        new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(200);
-                    WebcamCapture.captureImage(filename, usbDeviceID, file);
-                } catch (InterruptedException e) {
-                    logger.log(Level.SEVERE, "Exception in UIMenu", e);
-                }
-            }
-        }).start();
+        // Keep one camera session open that streams frames until the application exits
+        WebcamCapture.openSession(filename, usbDeviceID);
         
         UIMenu UI = new UIMenu();
 
@@ -60,6 +51,19 @@ public class GameplayApp extends Application {
         }).start();
     }
 
+    /**
+     * Releases the camera and the native detection buffers, and stops the
+     * metrics export, when the JavaFX application exits.
+     */
+    @Override
+    public void stop() {
+        WebcamCapture.closeSession();
+        ImageHandler.releaseResources();
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
     /**
      * Configures the application logger with file output and exception handling.
      * Sets up logging to write to 'application.log' and establishes uncaught exception handling.
@@ -1,7 +1,6 @@
 package logic;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.opencv.core.*;
@@ -15,23 +14,34 @@ import org.opencv.highgui.HighGui;
  * Provides methods for image capture, processing, and drawing game elements.
  */
 public class ImageHandler {
+	static {
+		// Load the OpenCV library, before the static fields holding native buffers
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
 	private static int[] tokensPosition;
-	private static int[] targetPosition;
+	private static volatile int[] targetPosition; // read by the detection thread
 	private static int[] tokenPosition;
 	private static int distanceToTarget;
 	private static boolean newTurn;
 	private static double tokenRadius;
 	private static double targetRadius;
-	private static int expositionValue = -8;
-	private static int cameraWidth = 1280;
-	private static int cameraHeight = 720;
+	private static volatile int expositionValue = -8;
+	private static volatile int cameraWidth = 1280;
+	private static volatile int cameraHeight = 720;
 	private static int tokenStyle = 1; // 1 for images (curlingJ1/2.png), 2 for circles
-	private static int targetStyle = 1; // 1 for real target , 2 for virtual target
-
-	static {
-		// Load the OpenCV library
-		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-	}
+	private static volatile int targetStyle = 1; // 1 for real target , 2 for virtual target
+	private static final int[] VIRTUAL_TARGET_POSITION = { 640, 360 }; // centre of the default frame
+	private static final SpriteCache spriteCache = new SpriteCache();
+	private static final MotionGate<List<DetectedStone>> tokenGate = new MotionGate<>();
+	private static final BackgroundModel backgroundModel = new BackgroundModel();
+	private static volatile CircleFit targetFit;
+	private static volatile StoneDetector detector; // built from the settings below, null when they changed
+	private static boolean detectionRegionEnabled = true;
+	private static boolean detectionRegionFallback = false;
+	private static double detectionMargin = 70; // pixels added around the target radius
+	private static boolean coarseTargetSearch = true;
+	private static boolean centerRefinement = true;
 
 	/**
 	 * Main method for testing image processing functionality.
@@ -116,6 +126,14 @@ public class ImageHandler {
 	 * @param newTargetPosition New position coordinates to set
 	 */
 	public static void setTargetPosition(int[] newTargetPosition) {
+		if (!Arrays.equals(targetPosition, newTargetPosition)) {
+			tokenGate.invalidate();
+		}
+		CircleFit fit = targetFit;
+		if (fit != null && !Arrays.equals(fit.getPosition(), newTargetPosition)) {
+			// Set from elsewhere (virtual target, cached position): the fit no longer applies
+			targetFit = null;
+		}
 		ImageHandler.targetPosition = newTargetPosition;
 	}
 
@@ -138,6 +156,10 @@ public class ImageHandler {
 	public static void setTokenRadius(double tokenRadius) {
 		System.out.println("Token radius set to " + tokenRadius);
 		ImageHandler.tokenRadius = tokenRadius;
+		// Token sprites are sized from the radius and must be rebuilt
+		spriteCache.invalidate();
+		tokenGate.invalidate();
+		invalidateDetector();
 	}
 
 	/**
@@ -161,6 +183,8 @@ public class ImageHandler {
 	public static void setTargetRadius(double radius) {
 		System.out.println("Target radius set to " + radius);
 		ImageHandler.targetRadius = radius;
+		tokenGate.invalidate();
+		invalidateDetector();
 	}
 
 	/**
@@ -288,6 +312,8 @@ public class ImageHandler {
 		newTurn = false;
 		tokenRadius = 34;
 		targetRadius = 205;
+		invalidateDetector();
+		tokenGate.invalidate();
 	}
 
 	/**
@@ -357,7 +383,6 @@ public class ImageHandler {
 			} else {
 				// Draw virtual target with effects
 				drawVirtualTarget(image, position);
-				targetPosition = position;
 			}
 		}
 	}
@@ -405,63 +430,24 @@ public class ImageHandler {
 	 */
 	private static void drawTokenPlayer(Mat image, int[] position, String imagePath) {
 		if (position[0] != 0) {
-			// Load the overlay image with -1 to preserve the alpha channel
-			Mat overlay = Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_UNCHANGED);
-
-			// Resize the overlay based on the tokenRadius
-			int newSize = (int) (tokenRadius * 4);
-			Mat resizedOverlay = new Mat();
-			Imgproc.resize(overlay, resizedOverlay, new Size(newSize, newSize));
-
-			// Check if the image has 4 channels (BGRA)
-			if (resizedOverlay.channels() != 4) {
-				System.out.println("The image must have an alpha channel");
+			// Sprite resized for the tokenRadius, decoded once and cached
+			SpriteCache.Sprite sprite = spriteCache.get(imagePath, (int) (tokenRadius * 4));
+			if (sprite == null) {
 				return;
 			}
 
 			// Define the region of interest (ROI)
-			int x = position[0] - resizedOverlay.cols() / 2;
-			int y = position[1] - resizedOverlay.rows() / 2;
-			Rect roi = new Rect(x, y, resizedOverlay.cols(), resizedOverlay.rows());
+			int x = position[0] - sprite.cols() / 2;
+			int y = position[1] - sprite.rows() / 2;
+			Rect roi = new Rect(x, y, sprite.cols(), sprite.rows());
 
-			if (x >= 0 && y >= 0 && x + resizedOverlay.cols() <= image.cols()
-					&& y + resizedOverlay.rows() <= image.rows()) {
+			if (x >= 0 && y >= 0 && x + sprite.cols() <= image.cols()
+					&& y + sprite.rows() <= image.rows()) {
 				Mat imageROI = image.submat(roi);
 
-				// Split the channels
-				List<Mat> overlayChannels = new ArrayList<>();
-				Core.split(resizedOverlay, overlayChannels);
-
-				// Normalize the alpha channel
-				Mat alpha = overlayChannels.get(3);
-				alpha.convertTo(alpha, CvType.CV_32F, 1.0 / 255.0);
-
-				// Create the image without the alpha channel
-				Mat overlayColor = new Mat();
-				Core.merge(overlayChannels.subList(0, 3), overlayColor);
-
-				// Apply alpha blending
-				Mat foreground = new Mat();
-				Mat background = new Mat();
-				overlayColor.convertTo(foreground, CvType.CV_32F);
-				imageROI.convertTo(background, CvType.CV_32F);
-
-				// For each pixel: result = alpha * foreground + (1-alpha) * background
-				for (int i = 0; i < foreground.rows(); i++) {
-					for (int j = 0; j < foreground.cols(); j++) {
-						double[] fg = foreground.get(i, j);
-						double[] bg = background.get(i, j);
-						double a = alpha.get(i, j)[0];
-
-						double[] result = new double[3];
-						for (int c = 0; c < 3; c++) {
-							result[c] = a * fg[c] + (1 - a) * bg[c];
-						}
-						background.put(i, j, result);
-					}
-				}
-
-				background.convertTo(imageROI, CvType.CV_8U);
+				// Alpha blending on the whole region at once
+				sprite.blendInto(imageROI);
+				imageROI.release();
 			}
 		}
 	}
@@ -489,205 +475,206 @@ public class ImageHandler {
 	}
 
 	/**
-	 * Detects the target position in the provided image.
-	 * Uses circle detection algorithms to locate the target area.
+	 * Detects the target position in the provided image, with the detector of
+	 * the current settings (see {@link StoneDetector#findTarget(Mat)}), and
+	 * keeps it as the target of the game.
 	 *
 	 * @param image Input image to process
 	 * @return int[] array containing target coordinates [x,y], or null if not found
 	 */
 	public static int[] getTargetPosition(Mat image) {
-		// Convert to grayscale for better efficiency
-		Mat grayImage = new Mat();
-		Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
-		// Edge detection with Canny - lower thresholds for imperfect circles
-		Imgproc.Canny(grayImage, grayImage, 30, 100); // Lower thresholds
-
-		// Larger morphological closing
-		Mat strel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(7, 7));
-		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_CLOSE, strel);
-
-		Mat circles = new Mat();
-		int minRadius, maxRadiusSearch;
-
-		minRadius = (int) (targetRadius - 8); // Increase search range
-		maxRadiusSearch = (int) (targetRadius + 8);
-
-		// HoughCircles method for circle detection
-		Imgproc.HoughCircles(
-				grayImage,
-				circles,
-				Imgproc.HOUGH_GRADIENT,
-				1.0,
-				1,
-				15,
-				5,
-				minRadius,
-				maxRadiusSearch);
-		System.out.println("Circles found: " + circles.cols());
-
-		// For robustness: take the average of the circle centers
-		double sumX = 0;
-		double sumY = 0;
-		int[] position = null;
-		int nbCircles = circles.cols(); // Total number of detected circles
-
-		// First pass: calculate averages
-		for (int i = 0; i < nbCircles; i++) {
-			double[] circle = circles.get(0, i);
-			sumX += circle[0];
-			sumY += circle[1];
-		}
-
-		// If circles were found, calculate the average
-		if (nbCircles > 0) {
-			position = new int[] {
-					(int) (sumX / nbCircles),
-					(int) (sumY / nbCircles)
-			};
-		}
-		;
-
-		ImageHandler.targetPosition = position;
+		StoneDetector.Target target = getDetector().findTarget(image);
+		int[] position = target == null ? null : target.getPosition();
+		targetFit = target == null ? null : target.getFit();
+		setTargetPosition(position);
 
 		return position;
 	}
+	/**
+	 * Gets the sub-pixel centre of the target found by the last detection.
+	 *
+	 * @return The circle fitted to the edge of the house, or null if the
+	 *         target position does not come from a refined detection
+	 */
+	public static CircleFit getTargetFit() {
+		return targetFit;
+	}
 
 	/**
 	 * Detects the token position in the provided image.
 	 * Uses color detection and circle detection algorithms.
+	 * When several stones are on the sheet, returns the most confident one
+	 * instead of a point between them.
 	 *
 	 * @param image Input image to process
 	 * @return int[] array containing token coordinates [x,y], or null if not found
 	 */
 	public int[] getTokenPosition(Mat image) {
-		// Convert to HSV color space
-		Mat hsvImage = new Mat();
-		Imgproc.cvtColor(image, hsvImage, Imgproc.COLOR_BGR2HSV);
-
-		// Define color ranges
-		// Red HSV
-		Scalar lowerRed1 = new Scalar(0, 100, 100);
-		Scalar upperRed1 = new Scalar(10, 255, 255);
-		Scalar lowerRed2 = new Scalar(160, 100, 100);
-		Scalar upperRed2 = new Scalar(179, 255, 255);
-
-		// Adjusted white HSV
-		// Hue can be any value as saturation is very low
-		// Saturation must be very low (close to 0)
-		// Value must be very high (close to 255)
-		Scalar lowerWhite = new Scalar(0, 0, 130); // H:0-180, S:0-20, V:180-255
-		Scalar upperWhite = new Scalar(360, 130, 255); // Covers the entire hue spectrum
-
-		// Blue HSV for target detection
-		Scalar lowerBlue = new Scalar(75, 70, 70); // Blue-green hues
-		Scalar upperBlue = new Scalar(140, 255, 255); // Dark blue
-
-		// Create masks
-		Mat redMask1 = new Mat();
-		Mat redMask2 = new Mat();
-		Mat blueMask = new Mat(); // Add blue mask
-		Mat whiteMask = new Mat();
-
-		// Detect colors
-		Core.inRange(hsvImage, lowerRed1, upperRed1, redMask1);
-		Core.inRange(hsvImage, lowerRed2, upperRed2, redMask2);
-		Core.inRange(hsvImage, lowerBlue, upperBlue, blueMask); // Detect blue
-		Core.inRange(hsvImage, lowerWhite, upperWhite, whiteMask);
-
-		// afficherImage(blueMask); // Display blue mask for debugging
-
-		// Combine red masks
-		Mat redMask = new Mat();
-		Core.add(redMask1, redMask2, redMask);
-
-		// Convert the image to grayscale
-		Mat grayImage = new Mat();
-		Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
-		// Binary thresholding
-		Imgproc.threshold(grayImage, grayImage, 185, 255, Imgproc.THRESH_BINARY_INV);
-		// Remove red, blue, and white areas
-		Core.subtract(grayImage, redMask, grayImage);
-		Core.subtract(grayImage, blueMask, grayImage); // Subtract blue mask
-		Core.subtract(grayImage, whiteMask, grayImage);
-
-		// Clean the image with morphology
-		Mat strel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
-				new Size((int) tokenRadius / 4, (int) tokenRadius / 4));
-		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_OPEN, strel);
-
-		// Morphological closing
-		strel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE,
-				new Size((int) tokenRadius / 2, (int) tokenRadius / 2));
-		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_CLOSE, strel);
-		// afficherImage(grayImage);
-		// Circle detection
-		Mat circles = new Mat();
-		int minRadius = (int) (tokenRadius - 5);
-		int maxRadius = (int) (tokenRadius + 5);
-
-		// Optimized HoughCircles parameters
-		Imgproc.HoughCircles(
-				grayImage,
-				circles,
-				Imgproc.HOUGH_GRADIENT,
-				1.0,
-				1, // minimum distance between centers
-				30, // upper threshold for Canny
-				10, // accumulator threshold
-				minRadius,
-				maxRadius);
-
-		for (int i = 0; i < circles.cols(); i++) {
-			double[] circle = circles.get(0, i);
-			Point center = new Point(circle[0], circle[1]);
-			int radius = (int) circle[2];
-			// Draw the center
-			Imgproc.circle(grayImage, center, 3, new Scalar(0, 255, 0), -1);
-			// Draw the circle
-			Imgproc.circle(grayImage, center, radius, new Scalar(0, 0, 255), 2);
+		List<DetectedStone> stones = getStonePositions(image);
+		DetectedStone best = null;
+		for (DetectedStone stone : stones) {
+			if (best == null || stone.getConfidence() > best.getConfidence()) {
+				best = stone;
+			}
 		}
+		if (best != null && tokenRadius < 0) {
+			tokenRadius = best.getRadius();
+			invalidateDetector();
+		}
+
+		tokenPosition = best == null ? null : best.getPosition();
+
+		return tokenPosition;
+	}
 
-		// Calculate the average positions as for the target
-		double sumX = 0;
-		double sumY = 0;
-		double sumRadius = 0;
-		int[] position = null;
-		int nbCircles = circles.cols();
-
-		for (int i = 0; i < nbCircles; i++) {
-			double[] circle = circles.get(0, i);
-			sumX += circle[0];
-			sumY += circle[1];
-			sumRadius += circle[2];
+	/**
+	 * Detects every stone in the provided image in a single pass.
+	 * Once the target is known, only the region around the house is searched
+	 * (see {@link #getDetectionRegion(Mat)}).
+	 *
+	 * @param image Input image to process
+	 * @return Stones found, strongest Hough response first; empty if none
+	 */
+	public List<DetectedStone> getStonePositions(Mat image) {
+		Rect region = getDetectionRegion(image);
+		// Skip the detection when the searched area has not changed
+		Mat gateImage = region != null ? image.submat(region) : image;
+		List<DetectedStone> stones = tokenGate.detect(gateImage, () -> getDetector().findStones(image, region));
+		if (gateImage != image) {
+			gateImage.release();
 		}
+		return stones;
+	}
 
-		if (nbCircles > 0) {
-			position = new int[] {
-					(int) (sumX / nbCircles),
-					(int) (sumY / nbCircles)
-			};
-			if (tokenRadius < 0) {
-				tokenRadius = sumRadius / nbCircles;
-			}
+	/**
+	 * Gets the distance between a stone and the target, from their sub-pixel
+	 * centres when available.
+	 *
+	 * @param stone Detected stone
+	 * @return Distance in pixels, or -1 if the target position is unknown
+	 */
+	public static double getDistanceToTarget(DetectedStone stone) {
+		double[] center = getTargetCenter();
+		if (center == null) {
+			return -1;
 		}
+		return Math.hypot(stone.getX() - center[0], stone.getY() - center[1]);
+	}
 
-		tokenPosition = position;
+	/**
+	 * Gets the centre of the target that distances are measured from, the
+	 * sub-pixel centre when available.
+	 *
+	 * @return Target centre [x,y], or null if the target position is unknown
+	 */
+	public static double[] getTargetCenter() {
+		int[] target = targetPosition;
+		if (target == null) {
+			return null;
+		}
+		CircleFit fit = targetFit;
+		if (fit != null) {
+			return new double[] { fit.getX(), fit.getY() };
+		}
+		return new double[] { target[0], target[1] };
+	}
 
-		return position;
+	/**
+	 * Gets the standard deviation of the distance between a stone and the
+	 * target, combining the uncertainties of both centres.
+	 *
+	 * @param stone Detected stone
+	 * @return Uncertainty of the distance in pixels
+	 */
+	public static double getDistanceUncertainty(DetectedStone stone) {
+		double targetUncertainty;
+		if (targetStyle == 2) {
+			targetUncertainty = 0; // virtual target, placed exactly
+		} else {
+			CircleFit fit = targetFit;
+			targetUncertainty = fit != null ? fit.getUncertainty() : StoneDetector.HOUGH_UNCERTAINTY;
+		}
+		return Math.hypot(stone.getUncertainty(), targetUncertainty);
+	}
+
+	/**
+	 * Gets the distance between a position and the target.
+	 *
+	 * @param position Position coordinates [x,y]
+	 * @return Distance in pixels, or -1 if the target position is unknown
+	 */
+	public static int getDistanceToTarget(int[] position) {
+		int[] target = targetPosition;
+		if (target == null || position == null) {
+			return -1;
+		}
+		int dx = position[0] - target[0];
+		int dy = position[1] - target[1];
+		return (int) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Computes the part of the frame where tokens are searched.
+	 * The region is a square around the target, of half-size targetRadius plus
+	 * the detection margin, clipped to the frame.
+	 *
+	 * @param image Frame the region applies to
+	 * @return Region to search, or null to search the whole frame (region
+	 *         disabled or target not located yet)
+	 */
+	public static Rect getDetectionRegion(Mat image) {
+		return getDetector().getDetectionRegion(image, targetPosition);
+	}
+
+	/**
+	 * Gets the detector of the current settings: radii, detection region,
+	 * target search, centre refinement and background model. It is rebuilt
+	 * when a setting changes, and can be used from any thread.
+	 *
+	 * @return The detector
+	 */
+	public static StoneDetector getDetector() {
+		StoneDetector current = detector;
+		return current != null ? current : buildDetector();
+	}
+
+	/**
+	 * Builds the detector of the current settings, unless another thread just did.
+	 * Synchronized with {@link #invalidateDetector()}, so a setting changed
+	 * during the build is never lost.
+	 *
+	 * @return The detector
+	 */
+	private static synchronized StoneDetector buildDetector() {
+		if (detector == null) {
+			detector = new StoneDetector(tokenRadius, targetRadius)
+					.withDetectionRegion(detectionRegionEnabled, detectionMargin, detectionRegionFallback)
+					.withCoarseTargetSearch(coarseTargetSearch)
+					.withCenterRefinement(centerRefinement)
+					.withBackgroundModel(backgroundModel);
+		}
+		return detector;
 	}
 
+	/**
+	 * Drops the detector after a change of the settings, to be rebuilt on next use.
+	 */
+	private static synchronized void invalidateDetector() {
+		detector = null;
+	}
 	/**
 	 * Calculates distance between token and target.
 	 *
 	 * @return Distance in pixels, or -1 if either position is unknown
 	 */
 	public int getDistanceToTarget() {
-		if (ImageHandler.targetPosition == null || ImageHandler.tokenPosition == null) {
+		int[] target = ImageHandler.targetPosition;
+		if (target == null || ImageHandler.tokenPosition == null) {
 			return -1; // Indicates that one of the positions is missing
 		}
 
-		int dx = tokenPosition[0] - targetPosition[0];
-		int dy = tokenPosition[1] - targetPosition[1];
+		int dx = tokenPosition[0] - target[0];
+		int dy = tokenPosition[1] - target[1];
 		distanceToTarget = (int) Math.sqrt(dx * dx + dy * dy);
 
 		return distanceToTarget;
@@ -759,6 +746,16 @@ public class ImageHandler {
 		return targetStyle;
 	}
 
+	/**
+	 * Gets the place of the virtual target, used instead of a detected
+	 * target when the target style is virtual.
+	 *
+	 * @return Position coordinates [x,y] of the virtual target
+	 */
+	public static int[] getVirtualTargetPosition() {
+		return VIRTUAL_TARGET_POSITION.clone();
+	}
+
 	/**
 	 * Sets the target visualization style.
 	 * Setter for the static targetStyle field controlling target appearance.
@@ -772,6 +769,139 @@ public class ImageHandler {
 		}
 	}
 
+	/**
+	 * Releases the native buffers of the detection pipeline and the token sprites.
+	 * Called when the application shuts down; the buffers of detection threads
+	 * still running are left to them.
+	 */
+	public static void releaseResources() {
+		DetectionContext.releaseAll();
+		spriteCache.invalidate();
+	}
+
+	/**
+	 * Checks whether token detection is restricted to the region around the target.
+	 *
+	 * @return true if the detection region is used once the target is known
+	 */
+	public static boolean isDetectionRegionEnabled() {
+		return detectionRegionEnabled;
+	}
+
+	/**
+	 * Enables or disables restricting token detection to the region around the target.
+	 *
+	 * @param enabled true to search only near the target, false for full-frame search
+	 */
+	public static void setDetectionRegionEnabled(boolean enabled) {
+		detectionRegionEnabled = enabled;
+		tokenGate.invalidate();
+		invalidateDetector();
+	}
+
+	/**
+	 * Checks whether the whole frame is searched when no token is found in the region.
+	 *
+	 * @return true if full-frame fallback is enabled
+	 */
+	public static boolean isDetectionRegionFallback() {
+		return detectionRegionFallback;
+	}
+
+	/**
+	 * Enables or disables the full-frame search when no token is found near the target.
+	 * Disabled by default, since an empty sheet would then always pay for a
+	 * full-frame search.
+	 *
+	 * @param fallback true to search the whole frame after a miss in the region
+	 */
+	public static void setDetectionRegionFallback(boolean fallback) {
+		detectionRegionFallback = fallback;
+		tokenGate.invalidate();
+		invalidateDetector();
+	}
+
+	/**
+	 * Checks whether the target is searched coarse-to-fine.
+	 *
+	 * @return true if the house is located at quarter scale before the full-resolution search
+	 */
+	public static boolean isCoarseTargetSearch() {
+		return coarseTargetSearch;
+	}
+
+	/**
+	 * Enables or disables the coarse-to-fine target search.
+	 * When disabled, the whole frame is searched at full resolution.
+	 *
+	 * @param enabled true to locate the house at quarter scale first
+	 */
+	public static void setCoarseTargetSearch(boolean enabled) {
+		coarseTargetSearch = enabled;
+		invalidateDetector();
+	}
+
+	/**
+	 * Checks whether detected centres are refined by a least-squares circle fit.
+	 *
+	 * @return true if centres are refined to sub-pixel precision
+	 */
+	public static boolean isCenterRefinement() {
+		return centerRefinement;
+	}
+
+	/**
+	 * Enables or disables the least-squares refinement of the detected centres.
+	 * When disabled, centres are the average of the Hough circles.
+	 *
+	 * @param enabled true to refine the centres
+	 */
+	public static void setCenterRefinement(boolean enabled) {
+		centerRefinement = enabled;
+		tokenGate.invalidate();
+		invalidateDetector();
+	}
+
+	/**
+	 * Gets the margin added around the target radius for the detection region.
+	 *
+	 * @return Margin in pixels
+	 */
+	public static double getDetectionMargin() {
+		return detectionMargin;
+	}
+
+	/**
+	 * Sets the margin added around the target radius for the detection region.
+	 *
+	 * @param margin Margin in pixels
+	 */
+	public static void setDetectionMargin(double margin) {
+		detectionMargin = margin;
+		tokenGate.invalidate();
+		invalidateDetector();
+	}
+
+	/**
+	 * Gets the model of the empty sheet used to segment the stones.
+	 * Learned during calibration; until then the color filtering is used.
+	 *
+	 * @return The background model
+	 */
+	public static BackgroundModel getBackgroundModel() {
+		return backgroundModel;
+	}
+
+	/**
+	 * Gets the change detector placed in front of token detection.
+	 * Its counters show how many detections were skipped on unchanged frames.
+	 *
+	 * @return The token detection motion gate
+	 */
+	public static MotionGate<List<DetectedStone>> getMotionGate() {
+		return tokenGate;
+	}
+
 	/**
 	 * Draws a red circle representing player 1's token.
 	 *
@@ -0,0 +1,334 @@
+package logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only binary journal of the state transitions of a match.
+ * Each transition is written as one record: a type byte followed by a fixed
+ * payload, so a stone costs about twenty bytes. Records are gathered in a
+ * buffer and written to the file when {@link #flush()} is called at the end
+ * of each game action; the file is forced to the disk at most once per
+ * {@link #SYNC_INTERVAL_NS}, and when the journal is closed. A write that
+ * reached the file survives a crash of the application, the sync interval
+ * only bounds what a crash of the system can lose.
+ * Reading the journal back with {@link #replay(Path, MatchListener)} calls the
+ * same {@link MatchListener} methods as the ones used to write it.
+ * Not thread-safe: written from the thread running the game.
+ */
+public class MatchJournal implements MatchListener, AutoCloseable {
+	private static final Logger logger = Logger.getLogger(MatchJournal.class.getName());
+
+	private static final int MAGIC = 0x43524C4A; // "CRLJ"
+	private static final byte VERSION = 1;
+	private static final int HEADER_SIZE = 5;
+	private static final long SYNC_INTERVAL_NS = 1_000_000_000L;
+
+	private static final byte MATCH_STARTED = 1;
+	private static final byte TARGET_LOCKED = 2;
+	private static final byte STONE_PLACED = 3;
+	private static final byte STONE_MOVED = 4;
+	private static final byte STONE_REMOVED = 5;
+	private static final byte SHEET_EMPTIED = 6;
+	private static final byte STONE_LIFTED = 7;
+	private static final byte TURN_ENDED = 8;
+	private static final byte ROUND_ENDED = 9;
+	private static final byte SCORE_INCREMENTED = 10;
+	private static final byte MATCH_ENDED = 11;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+	private long lastSync;
+	private boolean failed;
+
+	/**
+	 * Opens a journal for appending.
+	 *
+	 * @param path    Journal file
+	 * @param channel Channel positioned at the end of the valid records
+	 */
+	private MatchJournal(Path path, FileChannel channel) {
+		this.path = path;
+		this.channel = channel;
+		lastSync = System.nanoTime();
+	}
+
+	/**
+	 * Creates a new journal, replacing any previous one at the same path.
+	 *
+	 * @param path Journal file
+	 * @return The journal, positioned after its header
+	 * @throws IOException if the file cannot be created
+	 */
+	public static MatchJournal create(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		MatchJournal journal = new MatchJournal(path, channel);
+		journal.buffer.putInt(MAGIC).put(VERSION);
+		journal.flush();
+		return journal;
+	}
+
+	/**
+	 * Reopens an existing journal to append to it, after a replay.
+	 * A record left incomplete by a crash is cut off.
+	 *
+	 * @param path   Journal file
+	 * @param length Length of the valid records, as returned by {@link #replay}
+	 * @return The journal, positioned after its last valid record
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static MatchJournal reopen(Path path, long length) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		try {
+			channel.truncate(length);
+			channel.position(length);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new MatchJournal(path, channel);
+	}
+
+	/**
+	 * Reads a journal and passes each of its records to a listener, in order.
+	 * Reading stops at the first incomplete or unknown record, which is what a
+	 * crash in the middle of a write leaves at the end of the file.
+	 *
+	 * @param path     Journal file
+	 * @param listener Receives the records
+	 * @return Length of the valid part of the file, or -1 if the file does not
+	 *         exist or is not a journal
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long replay(Path path, MatchListener listener) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return -1;
+		}
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			in = ByteBuffer.allocate((int) channel.size());
+			while (in.hasRemaining() && channel.read(in) >= 0) {
+				// Read the whole file, journals are a few kilobytes
+			}
+		}
+		in.flip();
+		if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.get() != VERSION) {
+			return -1;
+		}
+		long valid = in.position();
+		while (in.hasRemaining()) {
+			byte type = in.get();
+			int size = payloadSize(type);
+			if (size < 0 || in.remaining() < size) {
+				logger.log(Level.WARNING, "Journal " + path + " ends with an incomplete record at byte " + valid);
+				break;
+			}
+			switch (type) {
+			case MATCH_STARTED:
+				listener.matchStarted(in.getShort(), in.getShort());
+				break;
+			case TARGET_LOCKED:
+				listener.targetLocked(in.getInt(), in.getInt());
+				break;
+			case STONE_PLACED:
+				listener.stonePlaced(in.getShort(), in.get(), in.getFloat(), in.getFloat(), in.getFloat(),
+						in.getFloat());
+				break;
+			case STONE_MOVED:
+				listener.stoneMoved(in.getShort(), in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+				break;
+			case STONE_REMOVED:
+				listener.stoneRemoved(in.getShort());
+				break;
+			case SHEET_EMPTIED:
+				listener.sheetEmptied();
+				break;
+			case STONE_LIFTED:
+				listener.stoneLifted(in.getShort());
+				break;
+			case TURN_ENDED:
+				listener.turnEnded(in.get());
+				break;
+			case ROUND_ENDED:
+				listener.roundEnded();
+				break;
+			case SCORE_INCREMENTED:
+				listener.scoreIncremented(in.get());
+				break;
+			case MATCH_ENDED:
+				listener.matchEnded();
+				break;
+			default:
+				break;
+			}
+			valid = in.position();
+		}
+		return valid;
+	}
+
+	/**
+	 * Gets the size of the payload of a record type.
+	 *
+	 * @param type Record type
+	 * @return Payload size in bytes, or -1 for an unknown type
+	 */
+	private static int payloadSize(byte type) {
+		switch (type) {
+		case MATCH_STARTED:
+			return 4;
+		case TARGET_LOCKED:
+			return 8;
+		case STONE_PLACED:
+			return 19;
+		case STONE_MOVED:
+			return 18;
+		case STONE_REMOVED:
+		case STONE_LIFTED:
+			return 2;
+		case TURN_ENDED:
+		case SCORE_INCREMENTED:
+			return 1;
+		case SHEET_EMPTIED:
+		case ROUND_ENDED:
+		case MATCH_ENDED:
+			return 0;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Starts a record, writing the buffer out first if the record does not fit.
+	 *
+	 * @param type Record type
+	 * @return The buffer to put the payload in
+	 */
+	private ByteBuffer record(byte type) {
+		if (buffer.remaining() < 1 + payloadSize(type)) {
+			write();
+		}
+		return buffer.put(type);
+	}
+
+	@Override
+	public void matchStarted(int nbTurns, int maxRounds) {
+		record(MATCH_STARTED).putShort((short) nbTurns).putShort((short) maxRounds);
+	}
+
+	@Override
+	public void targetLocked(int x, int y) {
+		record(TARGET_LOCKED).putInt(x).putInt(y);
+	}
+
+	@Override
+	public void stonePlaced(int turn, int player, float x, float y, float distance, float uncertainty) {
+		record(STONE_PLACED).putShort((short) turn).put((byte) player).putFloat(x).putFloat(y).putFloat(distance)
+				.putFloat(uncertainty);
+	}
+
+	@Override
+	public void stoneMoved(int turn, float x, float y, float distance, float uncertainty) {
+		record(STONE_MOVED).putShort((short) turn).putFloat(x).putFloat(y).putFloat(distance).putFloat(uncertainty);
+	}
+
+	@Override
+	public void stoneRemoved(int turn) {
+		record(STONE_REMOVED).putShort((short) turn);
+	}
+
+	@Override
+	public void sheetEmptied() {
+		record(SHEET_EMPTIED);
+	}
+
+	@Override
+	public void stoneLifted(int turn) {
+		record(STONE_LIFTED).putShort((short) turn);
+	}
+
+	@Override
+	public void turnEnded(int advantage) {
+		record(TURN_ENDED).put((byte) advantage);
+	}
+
+	@Override
+	public void roundEnded() {
+		record(ROUND_ENDED);
+	}
+
+	@Override
+	public void scoreIncremented(int player) {
+		record(SCORE_INCREMENTED).put((byte) player);
+	}
+
+	@Override
+	public void matchEnded() {
+		record(MATCH_ENDED);
+	}
+
+	/**
+	 * Writes the buffered records to the file, and forces the file to the
+	 * disk if the last sync is older than the sync interval.
+	 * Called at the end of each game action.
+	 */
+	public void flush() {
+		write();
+		if (!failed && System.nanoTime() - lastSync >= SYNC_INTERVAL_NS) {
+			sync();
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 * After a write error the journal is disabled, the match goes on without it.
+	 */
+	private void write() {
+		buffer.flip();
+		try {
+			while (!failed && buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			failed = true;
+			logger.log(Level.SEVERE, "Unable to write match journal " + path + ", journal disabled", e);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Forces the written records to the disk.
+	 */
+	private void sync() {
+		try {
+			channel.force(false);
+			lastSync = System.nanoTime();
+		} catch (IOException e) {
+			failed = true;
+			logger.log(Level.SEVERE, "Unable to sync match journal " + path + ", journal disabled", e);
+		}
+	}
+
+	/**
+	 * Writes the buffered records, forces them to the disk and closes the file.
+	 */
+	@Override
+	public void close() {
+		write();
+		if (!failed) {
+			sync();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to close match journal " + path, e);
+		}
+	}
+}
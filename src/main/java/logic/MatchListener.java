@@ -0,0 +1,90 @@
+package logic;
+
+/**
+ * State transitions of a match, as recorded in the {@link MatchJournal}.
+ * Gameplay applies each transition through this interface; the journal
+ * writes them, and calls them back in order when it is replayed.
+ */
+public interface MatchListener {
+	/**
+	 * A match starts.
+	 *
+	 * @param nbTurns   Number of stones of an end
+	 * @param maxRounds Number of ends of the match
+	 */
+	void matchStarted(int nbTurns, int maxRounds);
+
+	/**
+	 * The target was found, or found at a new position.
+	 *
+	 * @param x Horizontal coordinate of the target
+	 * @param y Vertical coordinate of the target
+	 */
+	void targetLocked(int x, int y);
+
+	/**
+	 * The stone of a turn was detected at rest and placed on the board.
+	 *
+	 * @param turn        Turn of the stone
+	 * @param player      Player who threw it
+	 * @param x           Horizontal coordinate of the centre
+	 * @param y           Vertical coordinate of the centre
+	 * @param distance    Distance to the target, negative if unknown
+	 * @param uncertainty Standard deviation of the distance
+	 */
+	void stonePlaced(int turn, int player, float x, float y, float distance, float uncertainty);
+
+	/**
+	 * A stone of a previous turn was detected at a new position.
+	 *
+	 * @param turn        Turn of the stone
+	 * @param x           Horizontal coordinate of the centre
+	 * @param y           Vertical coordinate of the centre
+	 * @param distance    Distance to the target, negative if unknown
+	 * @param uncertainty Standard deviation of the distance
+	 */
+	void stoneMoved(int turn, float x, float y, float distance, float uncertainty);
+
+	/**
+	 * A stone was knocked out, or hit by the stone of a later turn.
+	 *
+	 * @param turn Turn of the stone
+	 */
+	void stoneRemoved(int turn);
+
+	/**
+	 * No stone is left on the sheet; the stones stay on the board.
+	 */
+	void sheetEmptied();
+
+	/**
+	 * The stone of a turn was taken off the sheet; it stays on the board.
+	 *
+	 * @param turn Turn of the stone
+	 */
+	void stoneLifted(int turn);
+
+	/**
+	 * A turn ended.
+	 *
+	 * @param advantage Player having the advantage, as given by {@link Gameplay#getAdvantage()}
+	 */
+	void turnEnded(int advantage);
+
+	/**
+	 * An end finished and the next one starts with an empty board.
+	 */
+	void roundEnded();
+
+	/**
+	 * A player scored the point of an end.
+	 *
+	 * @param player Player who scored
+	 */
+	void scoreIncremented(int player);
+
+	/**
+	 * The match is over.
+	 */
+	void matchEnded();
+}
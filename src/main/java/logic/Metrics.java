@@ -0,0 +1,221 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the runtime metrics of the application: counters, gauges and
+ * latency histograms, registered by name and shared by every thread.
+ * Recording is lock-free and allocation-free, cheap enough for every frame
+ * and every stage of the detection. The {@link MetricsReporter} samples the
+ * registry and exports it.
+ */
+public final class Metrics {
+	private static final Metrics instance = new Metrics();
+
+	/**
+	 * Monotonic count of events, such as captured frames.
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * Counts one event.
+		 */
+		public void increment() {
+			count.increment();
+		}
+
+		/**
+		 * Counts several events.
+		 *
+		 * @param events Number of events
+		 */
+		public void add(long events) {
+			count.add(events);
+		}
+
+		/**
+		 * Gets the number of events counted so far.
+		 *
+		 * @return Total count
+		 */
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * Distribution of durations, in buckets growing by 25% from 10 µs to
+	 * about 14 s, so percentiles are known within 25%.
+	 */
+	public static final class Histogram {
+		static final long[] BOUNDS = bounds(10_000L, 14_000_000_000L, 1.25);
+
+		private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Records a duration.
+		 *
+		 * @param nanos Duration in nanoseconds
+		 */
+		public void record(long nanos) {
+			int bucket = Arrays.binarySearch(BOUNDS, nanos);
+			counts.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+			sum.add(nanos);
+			max.accumulateAndGet(nanos, Math::max);
+		}
+
+		/**
+		 * Records the time elapsed since a start time, and returns the current
+		 * time, so consecutive stages can be timed in a chain.
+		 *
+		 * @param start Start time in {@link System#nanoTime()} units
+		 * @return The current time, start of the next stage
+		 */
+		public long recordSince(long start) {
+			long now = System.nanoTime();
+			record(now - start);
+			return now;
+		}
+
+		/**
+		 * Copies the number of durations recorded in each bucket so far.
+		 *
+		 * @param destination Array of {@link #BOUNDS}.length + 1 counts
+		 */
+		void copyCounts(long[] destination) {
+			for (int i = 0; i < destination.length; i++) {
+				destination[i] = counts.get(i);
+			}
+		}
+
+		/**
+		 * Gets the sum of the durations recorded so far.
+		 *
+		 * @return Sum in nanoseconds
+		 */
+		long getSum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Gets the longest duration recorded since the last call, and starts over.
+		 *
+		 * @return Maximum in nanoseconds, 0 if nothing was recorded
+		 */
+		long takeMax() {
+			return max.getAndSet(0);
+		}
+
+		/**
+		 * Builds geometric bucket bounds.
+		 *
+		 * @param first  Upper bound of the first bucket
+		 * @param last   Bound not to exceed
+		 * @param factor Ratio between consecutive bounds
+		 * @return Upper bounds of the buckets, the last bucket being unbounded
+		 */
+		private static long[] bounds(long first, long last, double factor) {
+			int size = (int) Math.floor(Math.log((double) last / first) / Math.log(factor)) + 1;
+			long[] bounds = new long[size];
+			double bound = first;
+			for (int i = 0; i < size; i++) {
+				bounds[i] = Math.round(bound);
+				bound *= factor;
+			}
+			return bounds;
+		}
+	}
+
+	private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+	private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+	private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Gets the registry shared by the whole application.
+	 *
+	 * @return The shared Metrics instance
+	 */
+	public static Metrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets a counter, registering it on first use.
+	 *
+	 * @param name Name of the counter, for instance "capture.frames"
+	 * @return The counter
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * Gets a histogram of durations, registering it on first use.
+	 *
+	 * @param name Name of the histogram, for instance "detection.hough"
+	 * @return The histogram
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * Registers a value read when the metrics are sampled, replacing any
+	 * gauge of the same name.
+	 *
+	 * @param name  Name of the gauge, for instance "mat.frames"
+	 * @param value Supplies the current value; called from the reporter thread
+	 */
+	public void gauge(String name, DoubleSupplier value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * Removes a gauge, for instance when the object it reads is closed.
+	 *
+	 * @param name Name of the gauge
+	 */
+	public void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * Gets the counters, sorted by name.
+	 *
+	 * @return Unmodifiable view of the counters
+	 */
+	Map<String, Counter> getCounters() {
+		return Collections.unmodifiableMap(counters);
+	}
+
+	/**
+	 * Gets the histograms, sorted by name.
+	 *
+	 * @return Unmodifiable view of the histograms
+	 */
+	Map<String, Histogram> getHistograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	/**
+	 * Gets the gauges, sorted by name.
+	 *
+	 * @return Unmodifiable view of the gauges
+	 */
+	Map<String, DoubleSupplier> getGauges() {
+		return Collections.unmodifiableMap(gauges);
+	}
+}
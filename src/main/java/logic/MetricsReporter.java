@@ -0,0 +1,437 @@
+package logic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Samples the {@link Metrics} registry once a second and exports the sample:
+ * to a CSV file rolled over by size, to a small HTTP endpoint on the loopback
+ * interface, and as the attributes of a JMX MBean, so a sheet can be watched
+ * live with a browser, curl or JConsole.
+ * Each sample holds, for the last second: the total and rate of every
+ * counter, the value of every gauge, and the count, mean, median, 95th and
+ * 99th percentiles and maximum of every histogram, in milliseconds.
+ */
+public class MetricsReporter implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(MetricsReporter.class.getName());
+	private static final long INTERVAL_MS = 1000;
+	private static final long MAX_FILE_BYTES = 5L * 1024 * 1024;
+	private static final int MAX_FILES = 10;
+	private static final int DEFAULT_PORT = 9464;
+	private static final String OBJECT_NAME = "curling:type=Metrics";
+	private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+	private static final DateTimeFormatter ROW_TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+	private final Metrics metrics;
+	private final Path directory;
+	private final ScheduledExecutorService scheduler;
+	private volatile Map<String, Double> latest = Collections.emptyMap();
+
+	// Used by the scheduler thread only
+	private final Map<String, Long> previousCounters = new HashMap<>();
+	private final Map<String, long[]> previousBuckets = new HashMap<>();
+	private final Map<String, Long> previousSums = new HashMap<>();
+	private final long[] buckets = new long[Metrics.Histogram.BOUNDS.length + 1];
+	private long previousSample;
+	private BufferedWriter csv;
+	private Path csvFile;
+	private List<String> csvColumns = Collections.emptyList();
+
+	private HttpServer server;
+	private ObjectName objectName;
+
+	/**
+	 * Starts sampling the metrics.
+	 *
+	 * @param metrics   Registry to sample
+	 * @param directory Directory of the CSV files, or null for no CSV
+	 * @param port      Port of the HTTP endpoint on the loopback interface, 0 for none
+	 */
+	public MetricsReporter(Metrics metrics, Path directory, int port) {
+		this.metrics = metrics;
+		this.directory = directory;
+		if (port > 0) {
+			startServer(port);
+		}
+		registerMBean();
+		previousSample = System.nanoTime();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::sample, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the reporter of the application, unless disabled with
+	 * {@code -Dcurling.metrics=false}. The CSV files go to the metrics
+	 * directory and the HTTP endpoint listens on http://localhost:9464/metrics,
+	 * another port being set with {@code -Dcurling.metricsPort=PORT}, 0 for none.
+	 *
+	 * @return The reporter, or null if disabled
+	 */
+	public static MetricsReporter startFromProperties() {
+		if ("false".equals(System.getProperty("curling.metrics"))) {
+			return null;
+		}
+		return new MetricsReporter(Metrics.getInstance(), Paths.get("metrics"),
+				Integer.getInteger("curling.metricsPort", DEFAULT_PORT));
+	}
+
+	/**
+	 * Takes a sample of every metric and exports it.
+	 */
+	private void sample() {
+		try {
+			long now = System.nanoTime();
+			double seconds = (now - previousSample) / 1e9;
+			previousSample = now;
+			Map<String, Double> values = new LinkedHashMap<>();
+			for (Map.Entry<String, Metrics.Counter> entry : metrics.getCounters().entrySet()) {
+				long count = entry.getValue().get();
+				Long previous = previousCounters.put(entry.getKey(), count);
+				values.put(entry.getKey(), (double) count);
+				values.put(entry.getKey() + ".rate", (count - (previous == null ? 0 : previous)) / seconds);
+			}
+			for (Map.Entry<String, DoubleSupplier> entry : metrics.getGauges().entrySet()) {
+				values.put(entry.getKey(), entry.getValue().getAsDouble());
+			}
+			for (Map.Entry<String, Metrics.Histogram> entry : metrics.getHistograms().entrySet()) {
+				sampleHistogram(entry.getKey(), entry.getValue(), values);
+			}
+			latest = Collections.unmodifiableMap(values);
+			writeCsv(values);
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "Unable to sample the metrics", e);
+		}
+	}
+
+	/**
+	 * Adds the statistics of the durations recorded in a histogram since the
+	 * previous sample.
+	 *
+	 * @param name      Name of the histogram
+	 * @param histogram The histogram
+	 * @param values    Sample being built
+	 */
+	private void sampleHistogram(String name, Metrics.Histogram histogram, Map<String, Double> values) {
+		histogram.copyCounts(buckets);
+		long[] previous = previousBuckets.computeIfAbsent(name, key -> new long[buckets.length]);
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			long total = buckets[i];
+			buckets[i] = total - previous[i];
+			previous[i] = total;
+			count += buckets[i];
+		}
+		long sum = histogram.getSum();
+		Long previousSum = previousSums.put(name, sum);
+		long max = histogram.takeMax();
+
+		values.put(name + ".count", (double) count);
+		values.put(name + ".mean_ms", count == 0 ? Double.NaN : (sum - (previousSum == null ? 0 : previousSum)) / 1e6 / count);
+		double maxMillis = count == 0 ? Double.NaN : max / 1e6;
+		// A bucket bound can exceed the longest duration actually recorded
+		values.put(name + ".p50_ms", Math.min(percentile(buckets, count, 0.50), maxMillis));
+		values.put(name + ".p95_ms", Math.min(percentile(buckets, count, 0.95), maxMillis));
+		values.put(name + ".p99_ms", Math.min(percentile(buckets, count, 0.99), maxMillis));
+		values.put(name + ".max_ms", maxMillis);
+	}
+
+	/**
+	 * Estimates a percentile as the upper bound of the bucket holding it.
+	 *
+	 * @param buckets  Number of durations per bucket
+	 * @param count    Total number of durations
+	 * @param fraction Percentile, between 0 and 1
+	 * @return Percentile in milliseconds, NaN if there is no duration
+	 */
+	private static double percentile(long[] buckets, long count, double fraction) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < Metrics.Histogram.BOUNDS.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return Metrics.Histogram.BOUNDS[i] / 1e6;
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Appends a sample to the CSV file, starting a new file when the current
+	 * one is full or the metrics changed.
+	 *
+	 * @param values Sample to write
+	 */
+	private void writeCsv(Map<String, Double> values) {
+		if (directory == null) {
+			return;
+		}
+		try {
+			List<String> columns = new ArrayList<>(values.keySet());
+			if (csv == null || !columns.equals(csvColumns) || Files.size(csvFile) > MAX_FILE_BYTES) {
+				rollCsv(columns);
+			}
+			StringBuilder row = new StringBuilder(LocalTime.now().format(ROW_TIME));
+			for (double value : values.values()) {
+				row.append(',');
+				if (!Double.isNaN(value)) {
+					row.append(format(value));
+				}
+			}
+			csv.write(row.toString());
+			csv.newLine();
+			csv.flush();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to write the metrics to " + csvFile + ", CSV export stopped", e);
+			closeCsv();
+			csvFile = null;
+		}
+	}
+
+	/**
+	 * Starts a new CSV file and deletes the oldest ones beyond the limit.
+	 *
+	 * @param columns Names of the metrics of the new file
+	 * @throws IOException if the file cannot be created
+	 */
+	private void rollCsv(List<String> columns) throws IOException {
+		closeCsv();
+		Files.createDirectories(directory);
+		String stamp = LocalDateTime.now().format(FILE_TIME);
+		Path file = directory.resolve("metrics-" + stamp + ".csv");
+		for (int k = 1; Files.exists(file); k++) {
+			file = directory.resolve("metrics-" + stamp + "-" + k + ".csv");
+		}
+		csvFile = file;
+		csv = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		csv.write("time," + String.join(",", columns));
+		csv.newLine();
+		csvColumns = columns;
+
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(directory)) {
+			files = listing.filter(path -> path.getFileName().toString().matches("metrics-.*\\.csv")).sorted()
+					.collect(Collectors.toList());
+		}
+		for (int i = 0; i < files.size() - MAX_FILES; i++) {
+			Files.deleteIfExists(files.get(i));
+		}
+	}
+
+	/**
+	 * Closes the current CSV file, if any.
+	 */
+	private void closeCsv() {
+		if (csv != null) {
+			try {
+				csv.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Unable to close " + csvFile, e);
+			}
+			csv = null;
+		}
+	}
+
+	/**
+	 * Starts the HTTP endpoint, serving the latest sample as "name value" lines.
+	 *
+	 * @param port Port on the loopback interface
+	 */
+	private void startServer(int port) {
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			server.createContext("/metrics", this::serve);
+			server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "metrics-http");
+				thread.setDaemon(true);
+				return thread;
+			}));
+			server.start();
+			logger.info("Metrics served on http://localhost:" + port + "/metrics");
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to serve the metrics on port " + port, e);
+			server = null;
+		}
+	}
+
+	/**
+	 * Answers a request of the HTTP endpoint.
+	 *
+	 * @param exchange The request
+	 * @throws IOException if the answer cannot be sent
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Double> entry : latest.entrySet()) {
+			if (!Double.isNaN(entry.getValue())) {
+				text.append(entry.getKey()).append(' ').append(format(entry.getValue())).append('\n');
+			}
+		}
+		byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Registers the MBean exposing the latest sample, one attribute per value.
+	 */
+	private void registerMBean() {
+		try {
+			MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (mbeans.isRegistered(name)) {
+				mbeans.unregisterMBean(name);
+			}
+			mbeans.registerMBean(new SampleMBean(), name);
+			objectName = name;
+		} catch (JMException e) {
+			logger.log(Level.WARNING, "Unable to register the metrics MBean", e);
+		}
+	}
+
+	/**
+	 * Read-only view of the latest sample for JMX clients.
+	 */
+	private final class SampleMBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Double value = latest.get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException("Metrics are read-only");
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			Map<String, Double> sample = latest;
+			for (String attribute : attributes) {
+				Double value = sample.get(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException("No operation on the metrics");
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			for (String name : latest.keySet()) {
+				attributes.add(new MBeanAttributeInfo(name, "double", name, true, false, false));
+			}
+			return new MBeanInfo(MetricsReporter.class.getName(), "Runtime metrics of the game, last second",
+					attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+
+	/**
+	 * Formats a value for the exports.
+	 *
+	 * @param value Value to format
+	 * @return The value with at most three decimals
+	 */
+	private static String format(double value) {
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+				: String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * Gets the latest sample.
+	 *
+	 * @return Values by name, empty until the first sample
+	 */
+	public Map<String, Double> getLatest() {
+		return latest;
+	}
+
+	/**
+	 * Stops sampling, the HTTP endpoint and the MBean, and closes the CSV file.
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(2, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeCsv();
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				logger.log(Level.WARNING, "Unable to unregister the metrics MBean", e);
+			}
+			objectName = null;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package logic;
+
+import java.util.function.Supplier;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap change detector placed in front of an expensive detection.
+ * Compares a small grayscale thumbnail of each frame with the thumbnail of the
+ * frame last sent to the detector, and returns the cached result when the
+ * two are the same up to camera noise. The detector itself runs outside the
+ * lock of the gate, so callers on other threads are not held up by it.
+ *
+ * @param <T> Type of the detection result
+ */
+public class MotionGate<T> {
+	private static final Size THUMBNAIL_SIZE = new Size(128, 72);
+
+	static {
+		// The gate allocates Mats on construction, possibly from a static initializer
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	private final Mat thumbnail = new Mat();
+	private final Mat grayThumbnail = new Mat();
+	private final Mat reference = new Mat();
+	private final Mat difference = new Mat();
+	private boolean hasResult;
+	private T cachedResult;
+	private long generation; // incremented by invalidate()
+
+	private int pixelThreshold = 15; // gray levels a thumbnail pixel must change by
+	private int changedPixels = 4; // thumbnail pixels allowed to change
+
+	private long hits;
+	private long misses;
+	private long missNanos;
+
+	/**
+	 * Returns the detection result for a frame, running the detector only if the
+	 * frame changed since the last detection.
+	 *
+	 * @param frame    Frame, or region of a frame, compared with the last one
+	 * @param detector Detection to run when the frame changed
+	 * @return Fresh or cached detection result
+	 */
+	public T detect(Mat frame, Supplier<T> detector) {
+		Mat detected;
+		long detectedGeneration;
+		synchronized (this) {
+			Imgproc.resize(frame, thumbnail, THUMBNAIL_SIZE, 0, 0, Imgproc.INTER_AREA);
+			if (thumbnail.channels() == 1) {
+				thumbnail.copyTo(grayThumbnail);
+			} else {
+				Imgproc.cvtColor(thumbnail, grayThumbnail, Imgproc.COLOR_BGR2GRAY);
+			}
+
+			if (hasResult && isUnchanged()) {
+				hits++;
+				return cachedResult;
+			}
+			detected = grayThumbnail.clone();
+			detectedGeneration = generation;
+		}
+
+		long start = System.nanoTime();
+		T result = detector.get();
+		long elapsed = System.nanoTime() - start;
+
+		synchronized (this) {
+			missNanos += elapsed;
+			misses++;
+			// A result computed with parameters changed in the meantime is not cached
+			if (detectedGeneration == generation) {
+				detected.copyTo(reference);
+				cachedResult = result;
+				hasResult = true;
+			}
+		}
+		detected.release();
+		return result;
+	}
+
+	/**
+	 * Compares the current thumbnail with the reference thumbnail.
+	 *
+	 * @return true if fewer pixels than allowed changed beyond the threshold
+	 */
+	private boolean isUnchanged() {
+		Core.absdiff(grayThumbnail, reference, difference);
+		Imgproc.threshold(difference, difference, pixelThreshold, 255, Imgproc.THRESH_BINARY);
+		return Core.countNonZero(difference) <= changedPixels;
+	}
+
+	/**
+	 * Forgets the cached result so the next frame is always processed.
+	 * Must be called whenever the detection parameters change.
+	 */
+	public synchronized void invalidate() {
+		hasResult = false;
+		cachedResult = null;
+		generation++;
+	}
+
+	/**
+	 * Gets the number of frames answered from the cache.
+	 *
+	 * @return Number of cache hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of frames that went through the detector.
+	 *
+	 * @return Number of cache misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Estimates the detection time saved by the cache, from the average
+	 * duration of the detections actually run.
+	 *
+	 * @return Estimated time saved in milliseconds
+	 */
+	public synchronized double getSavedMillis() {
+		if (misses == 0) {
+			return 0;
+		}
+		return hits * (missNanos / (double) misses) / 1e6;
+	}
+
+	/**
+	 * Resets the hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+		missNanos = 0;
+	}
+
+	/**
+	 * Sets how many gray levels a thumbnail pixel must change by to count as changed.
+	 *
+	 * @param pixelThreshold Threshold in gray levels
+	 */
+	public synchronized void setPixelThreshold(int pixelThreshold) {
+		this.pixelThreshold = pixelThreshold;
+	}
+
+	/**
+	 * Sets how many thumbnail pixels may change before the frame is processed again.
+	 *
+	 * @param changedPixels Number of pixels
+	 */
+	public synchronized void setChangedPixels(int changedPixels) {
+		this.changedPixels = changedPixels;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Motion gate: " + hits + " hits / " + misses + " misses, ~" + Math.round(getSavedMillis())
+				+ " ms of detection saved";
+	}
+}
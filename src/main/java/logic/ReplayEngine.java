@@ -0,0 +1,615 @@
+package logic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Headless replay of a match from recorded frames.
+ * Feeds a directory, a zip archive, a single image or a session recorded by
+ * {@link SessionRecorder} through the detection pipeline and the
+ * {@link TurnController}, exactly as the game screen does with the camera,
+ * but without JavaFX and as fast as the frames can be processed. Image files
+ * are given synthetic capture times one frame interval apart, recorded
+ * frames keep their capture times, so the replay does not depend on the
+ * speed of the machine.
+ * Reports the final scores, the decision taken at each turn and the number
+ * of frames processed per second. The match is not recorded in the journal
+ * of the game.
+ * Still images, such as the ImagesTest corpus, can be held for several
+ * frames and separated by a frame of the empty sheet, for the stones to come
+ * to rest and be taken off between two images.
+ */
+public class ReplayEngine implements TurnController.Listener {
+	private static final Logger logger = Logger.getLogger(ReplayEngine.class.getName());
+	private static final long DEFAULT_FRAME_INTERVAL_NS = 200_000_000L;
+	private static final PathMatcher IMAGES = FileSystems.getDefault().getPathMatcher("glob:*.{jpg,jpeg,png,bmp}");
+	private static final PathMatcher SESSIONS = FileSystems.getDefault().getPathMatcher("glob:*.crls");
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Decision taken when the stone of a turn came to rest.
+	 */
+	public static final class Decision {
+		private final int round;
+		private final int turn;
+		private final int player;
+		private final boolean placed;
+		private final double x;
+		private final double y;
+		private final double distance;
+		private final double uncertainty;
+		private final int advantage;
+		private final String frame;
+
+		/**
+		 * Creates a decision.
+		 *
+		 * @param round       Round of the turn
+		 * @param turn        Turn, from 0
+		 * @param player      Player of the turn
+		 * @param placed      false if no new stone was found at rest
+		 * @param x           Horizontal coordinate of the stone
+		 * @param y           Vertical coordinate of the stone
+		 * @param distance    Distance of the stone to the target, negative if unknown
+		 * @param uncertainty Standard deviation of the distance
+		 * @param advantage   Player having the advantage, as given by {@link Gameplay#getAdvantage()}
+		 * @param frame       Name of the frame the decision was taken on
+		 */
+		public Decision(int round, int turn, int player, boolean placed, double x, double y, double distance,
+				double uncertainty, int advantage, String frame) {
+			this.round = round;
+			this.turn = turn;
+			this.player = player;
+			this.placed = placed;
+			this.x = x;
+			this.y = y;
+			this.distance = distance;
+			this.uncertainty = uncertainty;
+			this.advantage = advantage;
+			this.frame = frame;
+		}
+
+		/**
+		 * Gets the round of the turn.
+		 *
+		 * @return Round, from 1
+		 */
+		public int getRound() {
+			return round;
+		}
+
+		/**
+		 * Gets the turn.
+		 *
+		 * @return Turn, from 0
+		 */
+		public int getTurn() {
+			return turn;
+		}
+
+		/**
+		 * Gets the player having the advantage after the turn.
+		 *
+		 * @return 0 or 1, -1 if no stone counts, or {@link Gameplay#TOO_CLOSE_TO_CALL}
+		 */
+		public int getAdvantage() {
+			return advantage;
+		}
+
+		/**
+		 * Checks whether a new stone was placed at this turn.
+		 *
+		 * @return false if no new stone was found when the token came to rest
+		 */
+		public boolean isPlaced() {
+			return placed;
+		}
+
+		@Override
+		public String toString() {
+			String stone = placed
+					? String.format(Locale.ROOT, "J%d at (%.1f, %.1f), %.1f +/- %.1f px from the target", player + 1, x,
+							y, distance, uncertainty)
+					: "no stone";
+			String lead = advantage == Gameplay.TOO_CLOSE_TO_CALL ? "too close to call"
+					: advantage < 0 ? "no advantage" : "J" + (advantage + 1) + " ahead";
+			return String.format("Round %d, turn %d: %s, %s [%s]", round, turn + 1, stone, lead, frame);
+		}
+	}
+
+	/**
+	 * Outcome of a replay.
+	 */
+	public static final class Report {
+		private final List<Decision> decisions;
+		private final int[] scores;
+		private final boolean finished;
+		private final long frames;
+		private final double seconds;
+		private final String pipeline;
+
+		private Report(List<Decision> decisions, int[] scores, boolean finished, long frames, double seconds,
+				String pipeline) {
+			this.decisions = Collections.unmodifiableList(decisions);
+			this.scores = scores;
+			this.finished = finished;
+			this.frames = frames;
+			this.seconds = seconds;
+			this.pipeline = pipeline;
+		}
+
+		/**
+		 * Gets the decisions taken at each turn, in order.
+		 *
+		 * @return Decisions of the replay
+		 */
+		public List<Decision> getDecisions() {
+			return decisions;
+		}
+
+		/**
+		 * Gets the final score of both players.
+		 *
+		 * @return Scores [player 1, player 2]
+		 */
+		public int[] getScores() {
+			return scores.clone();
+		}
+
+		/**
+		 * Checks whether the frames covered the whole match.
+		 *
+		 * @return true if the match ended before the last frame
+		 */
+		public boolean isFinished() {
+			return finished;
+		}
+
+		/**
+		 * Gets the number of frames run through the detection.
+		 *
+		 * @return Number of frames, held frames included
+		 */
+		public long getFrames() {
+			return frames;
+		}
+
+		/**
+		 * Gets the processing speed of the replay.
+		 *
+		 * @return Frames processed per second of wall-clock time
+		 */
+		public double getFramesPerSecond() {
+			return seconds > 0 ? frames / seconds : 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			for (Decision decision : decisions) {
+				text.append(decision).append('\n');
+			}
+			text.append(String.format("Final score: %d - %d%s%n", scores[0], scores[1],
+					finished ? "" : " (match not finished)"));
+			text.append(String.format(Locale.ROOT, "%d frames in %.2f s, %.1f frames/s%n", frames, seconds,
+					getFramesPerSecond()));
+			text.append(pipeline);
+			return text.toString();
+		}
+	}
+
+	private final Path source;
+	private final List<String> frames;
+	private int hold = 1;
+	private Path between;
+	private long frameInterval = DEFAULT_FRAME_INTERVAL_NS;
+	private boolean realTime;
+
+	private Gameplay gameplay;
+	private final List<Decision> decisions = new ArrayList<>();
+	private String currentFrame;
+
+	/**
+	 * Creates a replay of the frames of a directory, a zip archive, a single
+	 * image or a recorded session.
+	 * Frames are replayed in the natural order of their names, Image_2 before
+	 * Image_10, and the frames of a session in the order they were captured.
+	 *
+	 * @param source Directory, .zip archive, image file or .crls session
+	 * @param glob   Pattern the frame names must match, for instance
+	 *               "Image_clean_*.jpg", or null for every image; ignored for a session
+	 * @throws IOException if the directory, the archive or the session cannot be read
+	 */
+	public ReplayEngine(Path source, String glob) throws IOException {
+		this.source = source;
+		PathMatcher matcher = glob == null ? IMAGES : FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		List<String> names = new ArrayList<>();
+		if (isSession(source)) {
+			try (SessionReader session = new SessionReader(source)) {
+				for (int i = 0; i < session.getFrameCount(); i++) {
+					names.add("#" + session.getSequence(i));
+				}
+			}
+			frames = names;
+			return;
+		}
+		if (Files.isDirectory(source)) {
+			try (Stream<Path> files = Files.list(source)) {
+				files.filter(Files::isRegularFile).map(file -> file.getFileName().toString()).forEach(names::add);
+			}
+		} else if (isArchive(source)) {
+			try (ZipFile zip = new ZipFile(source.toFile())) {
+				zip.stream().filter(entry -> !entry.isDirectory()).map(ZipEntry::getName).forEach(names::add);
+			}
+		} else {
+			names.add(source.getFileName().toString());
+		}
+		names.removeIf(name -> {
+			Path file = Paths.get(name).getFileName();
+			return !matcher.matches(file) || !IMAGES.matches(file);
+		});
+		names.sort(ReplayEngine::compareNatural);
+		frames = names;
+	}
+
+	/**
+	 * Replays the frames, from a new game.
+	 *
+	 * @return Scores, decisions and speed of the replay
+	 * @throws IOException if the frames cannot be read
+	 */
+	public Report run() throws IOException {
+		decisions.clear();
+		gameplay = new Gameplay();
+		DetectionPipeline pipeline = new DetectionPipeline(null, gameplay.getHandler());
+		pipeline.requestTarget();
+		TurnController turns = new TurnController(gameplay, pipeline, this);
+		turns.start();
+
+		Mat separator = between == null ? null : Imgcodecs.imread(between.toString());
+		if (separator != null && separator.empty()) {
+			throw new IOException("Unable to read frame " + between);
+		}
+		long start = System.nanoTime();
+		long[] clock = { start, 0 }; // capture time and sequence of the last frame fed
+		if (isSession(source)) {
+			try {
+				replaySession(pipeline, turns, start, clock);
+			} finally {
+				pipeline.close();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			return new Report(new ArrayList<>(decisions), gameplay.getPlayerScoreRound().clone(),
+					gameplay.isGameFinished(), clock[1], seconds, pipeline.toString());
+		}
+		try (ZipFile zip = isArchive(source) ? new ZipFile(source.toFile()) : null) {
+			for (String name : frames) {
+				Mat frame = read(zip, name);
+				if (frame.empty()) {
+					logger.log(Level.WARNING, "Unable to read frame " + name + ", skipped");
+					continue;
+				}
+				currentFrame = name;
+				feed(pipeline, turns, frame, clock);
+				frame.release();
+				if (separator != null && !gameplay.isGameFinished()) {
+					currentFrame = between.getFileName().toString();
+					feed(pipeline, turns, separator, clock);
+				}
+				if (gameplay.isGameFinished()) {
+					break;
+				}
+			}
+		} finally {
+			if (separator != null) {
+				separator.release();
+			}
+			pipeline.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return new Report(new ArrayList<>(decisions), gameplay.getPlayerScoreRound().clone(),
+				gameplay.isGameFinished(), clock[1], seconds, pipeline.toString());
+	}
+
+	/**
+	 * Replays the frames of a recorded session at their capture times, shifted
+	 * to start now. Held frames and the frame between are not used: the
+	 * session already has the stones coming to rest and taken off.
+	 *
+	 * @param pipeline Detection pipeline
+	 * @param turns    Turn logic
+	 * @param start    Time the replay started
+	 * @param clock    Capture time and sequence of the last frame, updated
+	 * @throws IOException if the session cannot be read
+	 */
+	private void replaySession(DetectionPipeline pipeline, TurnController turns, long start, long[] clock)
+			throws IOException {
+		try (SessionReader session = new SessionReader(source)) {
+			for (int i = 0; i < session.getFrameCount() && !gameplay.isGameFinished(); i++) {
+				Mat frame = session.readFrame(i);
+				if (frame.empty()) {
+					logger.log(Level.WARNING, "Unable to decode frame " + session.getSequence(i) + ", skipped");
+					continue;
+				}
+				currentFrame = "#" + session.getSequence(i);
+				clock[0] = start + session.getTimestamp(i) - session.getTimestamp(0);
+				clock[1]++;
+				process(pipeline, turns, frame, clock);
+			}
+		}
+	}
+
+	/**
+	 * Runs a frame through the detection and the turn logic, as many times as
+	 * it is held.
+	 *
+	 * @param pipeline Detection pipeline
+	 * @param turns    Turn logic
+	 * @param frame    Frame to feed, kept by the caller
+	 * @param clock    Capture time and sequence of the last frame, updated
+	 */
+	private void feed(DetectionPipeline pipeline, TurnController turns, Mat frame, long[] clock) {
+		for (int k = 0; k < hold; k++) {
+			clock[0] += frameInterval;
+			clock[1]++;
+			process(pipeline, turns, frame.clone(), clock);
+		}
+	}
+
+	/**
+	 * Runs one frame through the detection and the turn logic, after waiting
+	 * for its capture time in real time mode.
+	 *
+	 * @param pipeline Detection pipeline
+	 * @param turns    Turn logic
+	 * @param frame    Frame to process, handed over and released
+	 * @param clock    Capture time and sequence of the frame
+	 */
+	private void process(DetectionPipeline pipeline, TurnController turns, Mat frame, long[] clock) {
+		if (realTime) {
+			long wait = clock[0] - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					frame.release();
+					return;
+				}
+			}
+		}
+		FrameResult result = pipeline.process(clock[1], clock[0], frame);
+		try {
+			turns.onResult(result);
+		} finally {
+			result.release();
+		}
+	}
+
+	/**
+	 * Reads a frame of the source.
+	 *
+	 * @param zip  Archive of the frames, or null if they are files
+	 * @param name Name of the frame
+	 * @return The decoded frame, empty if it cannot be decoded
+	 * @throws IOException if the archive cannot be read
+	 */
+	private Mat read(ZipFile zip, String name) throws IOException {
+		if (zip == null) {
+			Path file = Files.isDirectory(source) ? source.resolve(name) : source;
+			return Imgcodecs.imread(file.toString());
+		}
+		try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+			MatOfByte bytes = new MatOfByte(in.readAllBytes());
+			Mat frame = Imgcodecs.imdecode(bytes, Imgcodecs.IMREAD_COLOR);
+			bytes.release();
+			return frame;
+		}
+	}
+
+	@Override
+	public void stoneMoving() {
+		// Nothing to show
+	}
+
+	@Override
+	public void stoneSettled(int turn, int advantage) {
+		Board board = gameplay.getBoard();
+		boolean placed = turn < board.size() && board.isAlive(turn);
+		decisions.add(new Decision(gameplay.getCurrentRound(), turn, board.getPlayer(turn), placed,
+				placed ? board.getX(turn) : 0, placed ? board.getY(turn) : 0, placed ? board.getDistance(turn) : -1,
+				placed ? board.getUncertainty(turn) : 0, advantage, currentFrame));
+	}
+
+	@Override
+	public void turnCompleted(boolean roundEnded) {
+		if (roundEnded) {
+			int[] scores = gameplay.getPlayerScoreRound();
+			logger.info(String.format("Round over, score %d - %d", scores[0], scores[1]));
+		}
+	}
+
+	/**
+	 * Checks whether a source is a session recorded by {@link SessionRecorder}.
+	 *
+	 * @param source Source of the frames
+	 * @return true for a .crls file
+	 */
+	private static boolean isSession(Path source) {
+		return Files.isRegularFile(source) && SESSIONS.matches(source.getFileName());
+	}
+
+	/**
+	 * Checks whether a source is a zip archive.
+	 *
+	 * @param source Source of the frames
+	 * @return true for a .zip file
+	 */
+	private static boolean isArchive(Path source) {
+		return Files.isRegularFile(source)
+				&& source.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip");
+	}
+
+	/**
+	 * Compares two names so that embedded numbers sort by value.
+	 *
+	 * @param a First name
+	 * @param b Second name
+	 * @return Negative, zero or positive as a sorts before, with or after b
+	 */
+	static int compareNatural(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			char ca = a.charAt(i);
+			char cb = b.charAt(j);
+			if (Character.isDigit(ca) && Character.isDigit(cb)) {
+				int endA = i;
+				while (endA < a.length() && Character.isDigit(a.charAt(endA))) {
+					endA++;
+				}
+				int endB = j;
+				while (endB < b.length() && Character.isDigit(b.charAt(endB))) {
+					endB++;
+				}
+				// Compare by length first, then digit by digit, so long numbers never overflow
+				String numberA = a.substring(i, endA).replaceFirst("^0+(?=.)", "");
+				String numberB = b.substring(j, endB).replaceFirst("^0+(?=.)", "");
+				int order = numberA.length() != numberB.length() ? numberA.length() - numberB.length()
+						: numberA.compareTo(numberB);
+				if (order != 0) {
+					return order;
+				}
+				i = endA;
+				j = endB;
+			} else {
+				if (ca != cb) {
+					return ca - cb;
+				}
+				i++;
+				j++;
+			}
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	/**
+	 * Sets how many consecutive frames each frame of the source is fed as.
+	 *
+	 * @param hold Number of frames, at least 1
+	 */
+	public void setHold(int hold) {
+		this.hold = Math.max(1, hold);
+	}
+
+	/**
+	 * Sets a frame fed after each frame of the source, for instance the empty
+	 * sheet between still images of stones.
+	 *
+	 * @param between Image file, or null for none
+	 */
+	public void setBetween(Path between) {
+		this.between = between;
+	}
+
+	/**
+	 * Sets the time between the capture times given to consecutive frames.
+	 *
+	 * @param frameIntervalNs Interval in nanoseconds
+	 */
+	public void setFrameInterval(long frameIntervalNs) {
+		this.frameInterval = frameIntervalNs;
+	}
+
+	/**
+	 * Paces the replay at the capture rate instead of running as fast as possible.
+	 *
+	 * @param realTime true to wait for the capture time of each frame
+	 */
+	public void setRealTime(boolean realTime) {
+		this.realTime = realTime;
+	}
+
+	/**
+	 * Gets the names of the frames that will be replayed.
+	 *
+	 * @return Frame names, in replay order
+	 */
+	public List<String> getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Command line entry point.
+	 * Usage: ReplayEngine &lt;directory|archive.zip|image|session.crls&gt; [--glob PATTERN]
+	 * [--hold N] [--between IMAGE] [--interval MS] [--realtime]
+	 * For instance, to replay the clean images of the test corpus:
+	 * {@code ReplayEngine ImagesTest --glob "Image_clean_*.jpg" --hold 5 --between ImagesTest/Image_clean_1.jpg}
+	 *
+	 * @param args Command line arguments
+	 * @throws IOException if the frames cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ReplayEngine <directory|archive.zip|image|session.crls> [--glob PATTERN] [--hold N]"
+					+ " [--between IMAGE] [--interval MS] [--realtime]");
+			System.exit(2);
+		}
+		List<String> options = Arrays.asList(args).subList(1, args.length);
+		String glob = option(options, "--glob");
+		ReplayEngine engine = new ReplayEngine(Paths.get(args[0]), glob);
+		String hold = option(options, "--hold");
+		if (hold != null) {
+			engine.setHold(Integer.parseInt(hold));
+		}
+		String between = option(options, "--between");
+		if (between != null) {
+			engine.setBetween(Paths.get(between));
+		}
+		String interval = option(options, "--interval");
+		if (interval != null) {
+			engine.setFrameInterval(Long.parseLong(interval) * 1_000_000L);
+		}
+		engine.setRealTime(options.contains("--realtime"));
+		if (engine.getFrames().isEmpty()) {
+			System.err.println("No frame found in " + args[0]);
+			System.exit(1);
+		}
+		System.out.println(engine.run());
+	}
+
+	/**
+	 * Gets the value of a command line option.
+	 *
+	 * @param options Command line arguments after the source
+	 * @param name    Option name
+	 * @return The argument following the option, or null if absent
+	 */
+	static String option(List<String> options, String name) {
+		int index = options.indexOf(name);
+		return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : null;
+	}
+}
@@ -0,0 +1,358 @@
+package logic;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Reads a session recorded by {@link SessionRecorder}.
+ * Any frame can be read directly through the index at the end of the file.
+ * A file without index, when the recording was cut short, is scanned once
+ * on opening instead, up to its last complete chunk.
+ */
+public class SessionReader implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(SessionReader.class.getName());
+
+	/**
+	 * Detection result recorded for a frame.
+	 */
+	public static final class Detection {
+		private final long sequence;
+		private final long timestamp;
+		private final int[] target;
+		private final List<DetectedStone> stones;
+
+		private Detection(long sequence, long timestamp, int[] target, List<DetectedStone> stones) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.target = target;
+			this.stones = Collections.unmodifiableList(stones);
+		}
+
+		/**
+		 * Gets the sequence number of the frame the detection ran on.
+		 *
+		 * @return Frame sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Gets the time the detection finished.
+		 *
+		 * @return Timestamp in {@link System#nanoTime()} units of the recording
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Gets the position of the target.
+		 *
+		 * @return Target position [x,y], or null if it was not known
+		 */
+		public int[] getTargetPosition() {
+			return target == null ? null : target.clone();
+		}
+
+		/**
+		 * Gets the stones found on the frame.
+		 *
+		 * @return Detected stones
+		 */
+		public List<DetectedStone> getStones() {
+			return stones;
+		}
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer chunkHeader = ByteBuffer.allocate(SessionRecorder.CHUNK_HEADER_SIZE
+			+ SessionRecorder.FRAME_HEADER_SIZE);
+	private long[] frames = new long[3 * 256]; // sequence, capture time, offset of each frame
+	private int frameCount;
+	private long[] detections = new long[2 * 256]; // sequence, offset of each detection
+	private int detectionCount;
+	private boolean indexed;
+
+	/**
+	 * Opens a recorded session.
+	 *
+	 * @param path Session file
+	 * @throws IOException if the file cannot be read or is not a session
+	 */
+	public SessionReader(Path path) throws IOException {
+		this.path = path;
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = read(0, SessionRecorder.HEADER_SIZE);
+			if (header.getInt() != SessionRecorder.MAGIC || header.getInt() != SessionRecorder.VERSION) {
+				throw new IOException(path + " is not a recorded session");
+			}
+			indexed = readIndex();
+			if (!indexed) {
+				scan();
+				logger.info(String.format("Session %s has no index, %d frames recovered", path, frameCount));
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the index written at the end of the file.
+	 *
+	 * @return false if the file has no valid index
+	 * @throws IOException if the file cannot be read
+	 */
+	private boolean readIndex() throws IOException {
+		long size = channel.size();
+		if (size < SessionRecorder.HEADER_SIZE + SessionRecorder.CHUNK_HEADER_SIZE + SessionRecorder.TRAILER_SIZE) {
+			return false;
+		}
+		ByteBuffer trailer = read(size - SessionRecorder.TRAILER_SIZE, SessionRecorder.TRAILER_SIZE);
+		long offset = trailer.getLong();
+		if (trailer.getInt() != SessionRecorder.INDEX_MAGIC || offset < SessionRecorder.HEADER_SIZE
+				|| offset > size - SessionRecorder.TRAILER_SIZE - SessionRecorder.CHUNK_HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer header = read(offset, SessionRecorder.CHUNK_HEADER_SIZE);
+		int length = header.getInt(1);
+		if (header.get(0) != SessionRecorder.INDEX
+				|| offset + SessionRecorder.CHUNK_HEADER_SIZE + length + SessionRecorder.TRAILER_SIZE != size) {
+			return false;
+		}
+		ByteBuffer index = read(offset + SessionRecorder.CHUNK_HEADER_SIZE, length);
+		frameCount = index.getInt();
+		frames = new long[3 * frameCount];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = index.getLong();
+		}
+		detectionCount = index.getInt();
+		detections = new long[2 * detectionCount];
+		for (int i = 0; i < detections.length; i++) {
+			detections[i] = index.getLong();
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuilds the index by walking the chunks from the start of the file,
+	 * up to the last complete one.
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	private void scan() throws IOException {
+		long size = channel.size();
+		long position = SessionRecorder.HEADER_SIZE;
+		while (position + SessionRecorder.CHUNK_HEADER_SIZE + SessionRecorder.FRAME_HEADER_SIZE <= size) {
+			ByteBuffer header = read(position, chunkHeader);
+			byte type = header.get();
+			int length = header.getInt();
+			long end = position + SessionRecorder.CHUNK_HEADER_SIZE + length;
+			if (length < 0 || end > size || type == SessionRecorder.INDEX) {
+				break;
+			}
+			if (type == SessionRecorder.FRAME) {
+				frames = grow(frames, 3 * (frameCount + 1));
+				frames[3 * frameCount] = header.getLong();
+				frames[3 * frameCount + 1] = header.getLong();
+				frames[3 * frameCount + 2] = position;
+				frameCount++;
+			} else if (type == SessionRecorder.DETECTION) {
+				detections = grow(detections, 2 * (detectionCount + 1));
+				detections[2 * detectionCount] = header.getLong();
+				detections[2 * detectionCount + 1] = position;
+				detectionCount++;
+			}
+			// Chunks of unknown type are skipped
+			position = end;
+		}
+	}
+
+	/**
+	 * Gets the number of frames of the session.
+	 *
+	 * @return Number of frames
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Gets the sequence number a frame had on the frame bus.
+	 *
+	 * @param i Frame, from 0
+	 * @return Sequence number; gaps are frames dropped by the recorder
+	 */
+	public long getSequence(int i) {
+		return frames[3 * i];
+	}
+
+	/**
+	 * Gets the capture time of a frame.
+	 *
+	 * @param i Frame, from 0
+	 * @return Timestamp in {@link System#nanoTime()} units of the recording
+	 */
+	public long getTimestamp(int i) {
+		return frames[3 * i + 1];
+	}
+
+	/**
+	 * Checks whether the file was closed properly, with its index.
+	 *
+	 * @return false if the index was rebuilt by scanning the file
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Finds the first frame captured at or after a given time.
+	 *
+	 * @param timestamp Time in {@link System#nanoTime()} units of the recording
+	 * @return Frame, from 0, or the frame count if every frame is older
+	 */
+	public int seek(long timestamp) {
+		int low = 0;
+		int high = frameCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (frames[3 * middle + 1] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads and decodes a frame.
+	 *
+	 * @param i Frame, from 0
+	 * @return The frame, owned by the caller; empty if it cannot be decoded
+	 * @throws IOException if the file cannot be read
+	 */
+	public Mat readFrame(int i) throws IOException {
+		long offset = frames[3 * i + 2];
+		int length = read(offset, chunkHeader).getInt(1) - SessionRecorder.FRAME_HEADER_SIZE;
+		ByteBuffer data = read(offset + SessionRecorder.CHUNK_HEADER_SIZE + SessionRecorder.FRAME_HEADER_SIZE,
+				length);
+		MatOfByte bytes = new MatOfByte(data.array());
+		Mat frame = Imgcodecs.imdecode(bytes, Imgcodecs.IMREAD_COLOR);
+		bytes.release();
+		return frame;
+	}
+
+	/**
+	 * Reads the detection result recorded for a frame.
+	 *
+	 * @param sequence Sequence number of the frame
+	 * @return The detection, or null if the frame was not detected or its
+	 *         result was dropped
+	 * @throws IOException if the file cannot be read
+	 */
+	public Detection readDetection(long sequence) throws IOException {
+		int low = 0;
+		int high = detectionCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long found = detections[2 * middle];
+			if (found < sequence) {
+				low = middle + 1;
+			} else if (found > sequence) {
+				high = middle - 1;
+			} else {
+				return readDetectionAt(detections[2 * middle + 1]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a detection chunk.
+	 *
+	 * @param offset Position of the chunk in the file
+	 * @return The detection
+	 * @throws IOException if the file cannot be read
+	 */
+	private Detection readDetectionAt(long offset) throws IOException {
+		int length = read(offset, chunkHeader).getInt(1);
+		ByteBuffer data = read(offset + SessionRecorder.CHUNK_HEADER_SIZE, length);
+		long sequence = data.getLong();
+		long timestamp = data.getLong();
+		int targetX = data.getInt();
+		int targetY = data.getInt();
+		int count = data.getInt();
+		List<DetectedStone> stones = new ArrayList<>(count);
+		for (int k = 0; k < count; k++) {
+			stones.add(new DetectedStone(data.getFloat(), data.getFloat(), data.getFloat(), data.getFloat(),
+					data.getFloat()));
+		}
+		int[] target = targetX < 0 ? null : new int[] { targetX, targetY };
+		return new Detection(sequence, timestamp, target, stones);
+	}
+
+	/**
+	 * Reads bytes of the file into a new buffer.
+	 *
+	 * @param position Position in the file
+	 * @param length   Number of bytes
+	 * @return Buffer holding the bytes, ready to be read
+	 * @throws IOException if the file cannot be read or is too short
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		return read(position, ByteBuffer.allocate(length));
+	}
+
+	/**
+	 * Fills a buffer with bytes of the file.
+	 *
+	 * @param position Position in the file
+	 * @param buffer   Buffer to fill entirely
+	 * @return The buffer, ready to be read
+	 * @throws IOException if the file cannot be read or is too short
+	 */
+	private ByteBuffer read(long position, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of session " + path);
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * Grows an index array geometrically.
+	 *
+	 * @param index  Array to grow
+	 * @param length Length needed
+	 * @return The array, or a larger copy of it
+	 */
+	private static long[] grow(long[] index, int length) {
+		return length <= index.length ? index : Arrays.copyOf(index, Math.max(length, 2 * index.length));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,395 @@
+package logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Records the camera frames of a session, with their capture times and the
+ * detection results, into one file that {@link SessionReader} and the
+ * {@link ReplayEngine} can read back.
+ * The file is a sequence of chunks, each made of a type byte, a payload
+ * length and the payload: JPEG frames with their sequence number and
+ * capture time, and detection results. An index of the chunks closes the
+ * file, for random access to any frame; a file cut short by a crash has no
+ * index but can still be read in order.
+ * The capture thread only copies the frame into a free buffer of a fixed
+ * pool, which takes a fraction of a millisecond; a writer thread encodes
+ * and writes it. When the disk is too slow and every buffer is waiting to
+ * be written, new frames are dropped and counted instead of stalling the
+ * capture.
+ */
+public class SessionRecorder implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(SessionRecorder.class.getName());
+	private static final Metrics.Counter droppedFrameCount = Metrics.getInstance().counter("recorder.droppedFrames");
+
+	static final int MAGIC = 0x43524C53; // "CRLS"
+	static final int INDEX_MAGIC = 0x43524C58; // "CRLX"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int CHUNK_HEADER_SIZE = 5;
+	static final int TRAILER_SIZE = 12;
+	static final byte FRAME = 1;
+	static final byte DETECTION = 2;
+	static final byte INDEX = 3;
+	static final int FRAME_HEADER_SIZE = 16; // sequence and capture time before the JPEG data
+	static final int STONE_SIZE = 20;
+
+	private static final int DEFAULT_BUFFERS = 8;
+	private static final int JPEG_QUALITY = 90;
+
+	/**
+	 * Frame or detection result waiting to be written.
+	 */
+	private static final class Entry {
+		final Mat frame; // null for a detection result
+		long sequence;
+		long timestamp;
+		int[] target;
+		List<DetectedStone> stones;
+
+		Entry(Mat frame) {
+			this.frame = frame;
+		}
+	}
+
+	private static final Entry END = new Entry(null);
+
+	private final Path path;
+	private final FileChannel channel;
+	private final BlockingQueue<Entry> freeFrames;
+	private final BlockingQueue<Entry> pending;
+	private final Thread writerThread;
+	private volatile boolean recording = true;
+
+	// Used by the writer thread only
+	private final ByteBuffer chunkHeader = ByteBuffer.allocateDirect(64);
+	private final MatOfByte jpeg = new MatOfByte();
+	private final MatOfInt jpegParameters = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+	private byte[] jpegBytes = new byte[0];
+	private long position;
+	private long[] frameIndex = new long[3 * 256]; // sequence, capture time, offset of each frame
+	private int indexedFrames;
+	private long[] detectionIndex = new long[2 * 256]; // sequence, offset of each detection
+	private int indexedDetections;
+
+	// Statistics
+	private volatile long recordedFrames;
+	private volatile long droppedFrames;
+	private volatile long droppedDetections;
+
+	/**
+	 * Creates a recorder writing to a new file, replacing any existing one.
+	 *
+	 * @param path    File to record to
+	 * @param buffers Number of frames that can wait to be written
+	 * @throws IOException if the file cannot be created
+	 */
+	public SessionRecorder(Path path, int buffers) throws IOException {
+		this.path = path;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		freeFrames = new ArrayBlockingQueue<>(buffers);
+		for (int i = 0; i < buffers; i++) {
+			freeFrames.add(new Entry(new Mat()));
+		}
+		// Room for every frame buffer and as many detection results
+		pending = new ArrayBlockingQueue<>(2 * buffers + 1);
+		chunkHeader.putInt(MAGIC).putInt(VERSION).flip();
+		position = write(chunkHeader);
+		writerThread = new Thread(this::writeLoop, "session-recorder");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Creates a recorder with the default number of frame buffers.
+	 *
+	 * @param path File to record to
+	 * @throws IOException if the file cannot be created
+	 */
+	public SessionRecorder(Path path) throws IOException {
+		this(path, DEFAULT_BUFFERS);
+	}
+
+	/**
+	 * Creates a recorder writing to a new file named after the current time.
+	 *
+	 * @param directory Directory of the recorded sessions, created if needed
+	 * @return The recorder
+	 * @throws IOException if the file cannot be created
+	 */
+	public static SessionRecorder newSession(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		String name = "session-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".crls";
+		return new SessionRecorder(directory.resolve(name));
+	}
+
+	/**
+	 * Queues a camera frame. Never blocks: the frame is dropped if no buffer is free.
+	 *
+	 * @param frame     Frame read from the camera, copied
+	 * @param sequence  Sequence number of the frame
+	 * @param timestamp Capture time, in {@link System#nanoTime()} units
+	 * @return true if the frame was queued, false if it was dropped
+	 */
+	public boolean recordFrame(Mat frame, long sequence, long timestamp) {
+		if (!recording) {
+			return false;
+		}
+		Entry entry = freeFrames.poll();
+		if (entry == null) {
+			droppedFrames++;
+			droppedFrameCount.increment();
+			return false;
+		}
+		frame.copyTo(entry.frame);
+		entry.sequence = sequence;
+		entry.timestamp = timestamp;
+		if (!pending.offer(entry)) {
+			freeFrames.offer(entry);
+			droppedFrames++;
+			droppedFrameCount.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Queues the detection result of a frame. Never blocks.
+	 *
+	 * @param result Detection result, only its sequence, target and stones are kept
+	 */
+	public void recordDetection(FrameResult result) {
+		if (!recording) {
+			return;
+		}
+		Entry entry = new Entry(null);
+		entry.sequence = result.getSequence();
+		entry.timestamp = result.getDetectionTimestamp();
+		entry.target = result.getTargetPosition();
+		entry.stones = result.getStones();
+		if (!pending.offer(entry)) {
+			droppedDetections++;
+		}
+	}
+
+	/**
+	 * Writer loop: writes the queued entries until the recorder is closed,
+	 * then writes the index.
+	 */
+	private void writeLoop() {
+		try {
+			while (true) {
+				Entry entry = pending.take();
+				if (entry == END) {
+					break;
+				}
+				if (entry.frame != null) {
+					try {
+						writeFrame(entry);
+					} finally {
+						freeFrames.offer(entry);
+					}
+				} else {
+					writeDetection(entry);
+				}
+			}
+			writeIndex();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Unable to write session " + path + ", recording stopped", e);
+			recording = false;
+		}
+	}
+
+	/**
+	 * Encodes a frame and writes its chunk.
+	 *
+	 * @param entry Frame to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeFrame(Entry entry) throws IOException {
+		Imgcodecs.imencode(".jpg", entry.frame, jpeg, jpegParameters);
+		int length = (int) jpeg.total();
+		if (jpegBytes.length < length) {
+			jpegBytes = new byte[length + length / 4];
+		}
+		jpeg.get(0, 0, jpegBytes);
+
+		frameIndex = grow(frameIndex, 3 * (indexedFrames + 1));
+		frameIndex[3 * indexedFrames] = entry.sequence;
+		frameIndex[3 * indexedFrames + 1] = entry.timestamp;
+		frameIndex[3 * indexedFrames + 2] = position;
+		indexedFrames++;
+
+		chunkHeader.clear();
+		chunkHeader.put(FRAME).putInt(FRAME_HEADER_SIZE + length).putLong(entry.sequence).putLong(entry.timestamp);
+		chunkHeader.flip();
+		position += write(chunkHeader);
+		position += write(ByteBuffer.wrap(jpegBytes, 0, length));
+		recordedFrames++;
+	}
+
+	/**
+	 * Writes the chunk of a detection result.
+	 *
+	 * @param entry Detection result to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeDetection(Entry entry) throws IOException {
+		detectionIndex = grow(detectionIndex, 2 * (indexedDetections + 1));
+		detectionIndex[2 * indexedDetections] = entry.sequence;
+		detectionIndex[2 * indexedDetections + 1] = position;
+		indexedDetections++;
+
+		int stones = entry.stones.size();
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + 28 + STONE_SIZE * stones);
+		chunk.put(DETECTION).putInt(28 + STONE_SIZE * stones);
+		chunk.putLong(entry.sequence).putLong(entry.timestamp);
+		chunk.putInt(entry.target == null ? -1 : entry.target[0]).putInt(entry.target == null ? -1 : entry.target[1]);
+		chunk.putInt(stones);
+		for (DetectedStone stone : entry.stones) {
+			chunk.putFloat((float) stone.getX()).putFloat((float) stone.getY()).putFloat((float) stone.getRadius())
+					.putFloat((float) stone.getConfidence()).putFloat((float) stone.getUncertainty());
+		}
+		chunk.flip();
+		position += write(chunk);
+	}
+
+	/**
+	 * Writes the index chunk and the trailer pointing to it.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeIndex() throws IOException {
+		int length = 8 + 24 * indexedFrames + 16 * indexedDetections;
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + length + TRAILER_SIZE);
+		chunk.put(INDEX).putInt(length);
+		chunk.putInt(indexedFrames);
+		for (int i = 0; i < 3 * indexedFrames; i++) {
+			chunk.putLong(frameIndex[i]);
+		}
+		chunk.putInt(indexedDetections);
+		for (int i = 0; i < 2 * indexedDetections; i++) {
+			chunk.putLong(detectionIndex[i]);
+		}
+		chunk.putLong(position).putInt(INDEX_MAGIC);
+		chunk.flip();
+		position += write(chunk);
+	}
+
+	/**
+	 * Writes a buffer entirely at the end of the file.
+	 *
+	 * @param buffer Data to write
+	 * @return Number of bytes written
+	 * @throws IOException if the file cannot be written
+	 */
+	private long write(ByteBuffer buffer) throws IOException {
+		long written = 0;
+		while (buffer.hasRemaining()) {
+			written += channel.write(buffer);
+		}
+		return written;
+	}
+
+	/**
+	 * Grows an index array geometrically.
+	 *
+	 * @param index  Array to grow
+	 * @param length Length needed
+	 * @return The array, or a larger copy of it
+	 */
+	private static long[] grow(long[] index, int length) {
+		return length <= index.length ? index : Arrays.copyOf(index, Math.max(length, 2 * index.length));
+	}
+
+	/**
+	 * Gets the number of frames written to the file.
+	 *
+	 * @return Recorded frames
+	 */
+	public long getRecordedFrames() {
+		return recordedFrames;
+	}
+
+	/**
+	 * Gets the number of frames dropped because no buffer was free.
+	 *
+	 * @return Dropped frames
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * Checks whether frames are still accepted.
+	 *
+	 * @return false once closed, or after a write error
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Stops accepting frames, writes the frames still queued and the index,
+	 * and closes the file. Frames left in the queue by a writer that stopped
+	 * on an error are released.
+	 */
+	@Override
+	public void close() {
+		recording = false;
+		try {
+			if (writerThread.isAlive() && !pending.offer(END, 5, TimeUnit.SECONDS)) {
+				logger.log(Level.WARNING, "Session writer of " + path + " is stuck, index not written");
+			}
+			writerThread.join(10000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to close session " + path, e);
+		}
+		for (Entry entry : freeFrames) {
+			entry.frame.release();
+		}
+		// A stuck writer may still take queued entries, only a finished one leaves them behind
+		if (!writerThread.isAlive()) {
+			for (Entry entry = pending.poll(); entry != null; entry = pending.poll()) {
+				if (entry.frame != null) {
+					entry.frame.release();
+				}
+			}
+		}
+		jpeg.release();
+		jpegParameters.release();
+		logger.info(toString());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Session %s: %d frames recorded, %d frames and %d detections dropped", path,
+				recordedFrames, droppedFrames, droppedDetections);
+	}
+}
@@ -0,0 +1,164 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cache of the token images drawn over the camera feed.
+ * Each sprite is decoded once, resized for the current token radius and stored
+ * premultiplied by its alpha channel, so drawing a token only takes two
+ * whole-region OpenCV operations.
+ */
+public class SpriteCache {
+	private final Map<String, Mat> sources = new HashMap<>();
+	private final Map<String, Sprite> sprites = new HashMap<>();
+
+	/**
+	 * Token image ready to be blended onto a frame.
+	 * Holds the color premultiplied by alpha and the inverse alpha expanded
+	 * to three channels.
+	 */
+	static class Sprite {
+		private final Mat premultiplied;
+		private final Mat inverseAlpha;
+		private final Mat blended = new Mat();
+		// Kept apart from the Mats, so they stay valid once the sprite is released
+		private final int cols;
+		private final int rows;
+		private boolean released;
+
+		Sprite(Mat premultiplied, Mat inverseAlpha) {
+			this.premultiplied = premultiplied;
+			this.inverseAlpha = inverseAlpha;
+			cols = premultiplied.cols();
+			rows = premultiplied.rows();
+		}
+
+		int cols() {
+			return cols;
+		}
+
+		int rows() {
+			return rows;
+		}
+
+		/**
+		 * Blends the sprite into a region of the same size:
+		 * result = background * (1 - alpha) + alpha * foreground.
+		 * Does nothing if the cache released the sprite in the meantime.
+		 *
+		 * @param roi Region of the frame to draw on, modified in place
+		 */
+		synchronized void blendInto(Mat roi) {
+			if (released) {
+				return;
+			}
+			Core.multiply(roi, inverseAlpha, blended, 1.0 / 255.0);
+			Core.add(blended, premultiplied, roi);
+		}
+
+		/**
+		 * Releases the native memory of the sprite. Holds the sprite lock, so
+		 * a blend running on a vision worker finishes first.
+		 */
+		synchronized void release() {
+			released = true;
+			premultiplied.release();
+			inverseAlpha.release();
+			blended.release();
+		}
+	}
+
+	/**
+	 * Gets the sprite for an image at the given size, building it on first use.
+	 *
+	 * @param imagePath Path of the token image, which must have an alpha channel
+	 * @param size      Width and height of the sprite in pixels
+	 * @return The cached sprite, or null if the image is missing or has no alpha channel
+	 */
+	synchronized Sprite get(String imagePath, int size) {
+		String key = imagePath + "@" + size;
+		Sprite sprite = sprites.get(key);
+		if (sprite == null) {
+			sprite = build(imagePath, size);
+			if (sprite != null) {
+				sprites.put(key, sprite);
+			}
+		}
+		return sprite;
+	}
+
+	/**
+	 * Decodes, resizes and premultiplies a token image.
+	 *
+	 * @param imagePath Path of the token image
+	 * @param size      Width and height of the sprite in pixels
+	 * @return The new sprite, or null if the image cannot be used
+	 */
+	private Sprite build(String imagePath, int size) {
+		Mat source = sources.get(imagePath);
+		if (source == null) {
+			// Load the overlay image with -1 to preserve the alpha channel
+			source = Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_UNCHANGED);
+			if (source.empty()) {
+				System.out.println("Unable to load token image " + imagePath);
+				return null;
+			}
+			// Check if the image has 4 channels (BGRA)
+			if (source.channels() != 4) {
+				System.out.println("The image must have an alpha channel");
+				return null;
+			}
+			sources.put(imagePath, source);
+		}
+
+		Mat resized = new Mat();
+		Imgproc.resize(source, resized, new Size(size, size));
+
+		List<Mat> channels = new ArrayList<>();
+		Core.split(resized, channels);
+		Mat alpha = channels.get(3);
+		Mat color = new Mat();
+		Core.merge(channels.subList(0, 3), color);
+
+		// Expand alpha to three channels so it can be applied to a BGR region
+		Mat alpha3 = new Mat();
+		Core.merge(List.of(alpha, alpha, alpha), alpha3);
+
+		Mat premultiplied = new Mat();
+		Core.multiply(color, alpha3, premultiplied, 1.0 / 255.0);
+
+		Mat inverseAlpha = new Mat(alpha3.size(), CvType.CV_8UC3, new Scalar(255, 255, 255));
+		Core.subtract(inverseAlpha, alpha3, inverseAlpha);
+
+		resized.release();
+		color.release();
+		alpha3.release();
+		for (Mat channel : channels) {
+			channel.release();
+		}
+		return new Sprite(premultiplied, inverseAlpha);
+	}
+
+	/**
+	 * Drops all resized sprites.
+	 * Must be called whenever the token radius changes; decoded source
+	 * images are kept so only the resize is redone.
+	 */
+	public synchronized void invalidate() {
+		for (Sprite sprite : sprites.values()) {
+			sprite.release();
+		}
+		sprites.clear();
+	}
+}
@@ -0,0 +1,715 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Detection of the target and of the stones on a frame, with explicit
+ * parameters and results.
+ * A detector is immutable and keeps no state from one frame to the next:
+ * the working buffers belong to the calling thread, so the same detector can
+ * run on several frames at once, for instance to process a corpus of images
+ * on every core (see {@link BatchDetector}). {@link ImageHandler} runs the
+ * detector built from its current settings.
+ */
+public final class StoneDetector {
+	private static final Logger logger = Logger.getLogger(StoneDetector.class.getName());
+	static final double FULL_CONFIDENCE_CIRCLES = 5; // circles needed for a confidence of 1
+	static final double HOUGH_UNCERTAINTY = 1.5; // pixels, centre of circles that could not be refined
+	private static final double STONE_EDGE_BAND = 6; // pixels around the radius where stone edges are fitted
+	private static final double TARGET_EDGE_BAND = 14; // wider, the house is seen slightly elliptical
+	private static final int COARSE_SCALE = 4; // downscaling of the first target search
+	private static final int COARSE_MARGIN = 4 * COARSE_SCALE; // pixels added for the error of the coarse centre
+
+	// Red HSV
+	private static final Scalar LOWER_RED_1 = new Scalar(0, 100, 100);
+	private static final Scalar UPPER_RED_1 = new Scalar(10, 255, 255);
+	private static final Scalar LOWER_RED_2 = new Scalar(160, 100, 100);
+	private static final Scalar UPPER_RED_2 = new Scalar(179, 255, 255);
+	// Adjusted white HSV
+	// Hue can be any value as saturation is very low
+	// Saturation must be very low (close to 0)
+	// Value must be very high (close to 255)
+	private static final Scalar LOWER_WHITE = new Scalar(0, 0, 130); // H:0-180, S:0-20, V:180-255
+	private static final Scalar UPPER_WHITE = new Scalar(360, 130, 255); // Covers the entire hue spectrum
+	// Blue HSV for target detection
+	private static final Scalar LOWER_BLUE = new Scalar(75, 70, 70); // Blue-green hues
+	private static final Scalar UPPER_BLUE = new Scalar(140, 255, 255); // Dark blue
+
+	// Time spent in each stage, shared by every detector and thread
+	private static final Metrics.Histogram targetTime = Metrics.getInstance().histogram("detection.target");
+	private static final Metrics.Histogram hsvTime = Metrics.getInstance().histogram("detection.hsv");
+	private static final Metrics.Histogram masksTime = Metrics.getInstance().histogram("detection.masks");
+	private static final Metrics.Histogram morphologyTime = Metrics.getInstance().histogram("detection.morphology");
+	private static final Metrics.Histogram houghTime = Metrics.getInstance().histogram("detection.hough");
+	private static final Metrics.Histogram refineTime = Metrics.getInstance().histogram("detection.refine");
+
+	static {
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Target found on a frame.
+	 */
+	public static final class Target {
+		private final int[] position;
+		private final CircleFit fit;
+
+		private Target(int[] position, CircleFit fit) {
+			this.position = position;
+			this.fit = fit;
+		}
+
+		/**
+		 * Gets the position of the target.
+		 *
+		 * @return Target position [x,y]
+		 */
+		public int[] getPosition() {
+			return position.clone();
+		}
+
+		/**
+		 * Gets the circle fitted to the edge of the house.
+		 *
+		 * @return The fit, or null if the centre was not refined
+		 */
+		public CircleFit getFit() {
+			return fit;
+		}
+
+		/**
+		 * Gets the centre distances are measured from, sub-pixel when refined.
+		 *
+		 * @return Target centre [x,y]
+		 */
+		public double[] getCenter() {
+			return fit != null ? new double[] { fit.getX(), fit.getY() } : new double[] { position[0], position[1] };
+		}
+	}
+
+	/**
+	 * Target and stones found on a frame.
+	 */
+	public static final class Result {
+		private final Target target;
+		private final List<DetectedStone> stones;
+
+		private Result(Target target, List<DetectedStone> stones) {
+			this.target = target;
+			this.stones = stones;
+		}
+
+		/**
+		 * Gets the target.
+		 *
+		 * @return The target, or null if it was not found
+		 */
+		public Target getTarget() {
+			return target;
+		}
+
+		/**
+		 * Gets the stones.
+		 *
+		 * @return Unmodifiable list of the stones found, strongest first
+		 */
+		public List<DetectedStone> getStones() {
+			return stones;
+		}
+
+		/**
+		 * Gets the most confident stone.
+		 *
+		 * @return The stone, or null if none was found
+		 */
+		public DetectedStone getBestStone() {
+			DetectedStone best = null;
+			for (DetectedStone stone : stones) {
+				if (best == null || stone.getConfidence() > best.getConfidence()) {
+					best = stone;
+				}
+			}
+			return best;
+		}
+	}
+
+	private final double tokenRadius;
+	private final double targetRadius;
+	private final boolean detectionRegion;
+	private final double detectionMargin;
+	private final boolean regionFallback;
+	private final boolean coarseTargetSearch;
+	private final boolean centerRefinement;
+	private final BackgroundModel backgroundModel;
+
+	/**
+	 * Creates a detector with the default settings of the game: search of the
+	 * stones around the target, coarse-to-fine target search, sub-pixel
+	 * centres and color segmentation.
+	 *
+	 * @param tokenRadius  Radius of the stones in pixels
+	 * @param targetRadius Radius of the house in pixels
+	 */
+	public StoneDetector(double tokenRadius, double targetRadius) {
+		this(tokenRadius, targetRadius, true, 70, false, true, true, null);
+	}
+
+	private StoneDetector(double tokenRadius, double targetRadius, boolean detectionRegion, double detectionMargin,
+			boolean regionFallback, boolean coarseTargetSearch, boolean centerRefinement,
+			BackgroundModel backgroundModel) {
+		this.tokenRadius = tokenRadius;
+		this.targetRadius = targetRadius;
+		this.detectionRegion = detectionRegion;
+		this.detectionMargin = detectionMargin;
+		this.regionFallback = regionFallback;
+		this.coarseTargetSearch = coarseTargetSearch;
+		this.centerRefinement = centerRefinement;
+		this.backgroundModel = backgroundModel;
+	}
+
+	/**
+	 * Returns a detector searching the stones only around the target.
+	 *
+	 * @param enabled  true to search the square of half-size targetRadius plus
+	 *                 the margin around the target, once it is known
+	 * @param margin   Margin in pixels
+	 * @param fallback true to search the whole frame when nothing is found around the target
+	 * @return A detector with these settings
+	 */
+	public StoneDetector withDetectionRegion(boolean enabled, double margin, boolean fallback) {
+		return new StoneDetector(tokenRadius, targetRadius, enabled, margin, fallback, coarseTargetSearch,
+				centerRefinement, backgroundModel);
+	}
+
+	/**
+	 * Returns a detector locating the house at quarter scale first, or not.
+	 *
+	 * @param enabled true for the coarse-to-fine search
+	 * @return A detector with this setting
+	 */
+	public StoneDetector withCoarseTargetSearch(boolean enabled) {
+		return new StoneDetector(tokenRadius, targetRadius, detectionRegion, detectionMargin, regionFallback,
+				enabled, centerRefinement, backgroundModel);
+	}
+
+	/**
+	 * Returns a detector refining the centres with a least-squares circle fit, or not.
+	 *
+	 * @param enabled true to refine the centres
+	 * @return A detector with this setting
+	 */
+	public StoneDetector withCenterRefinement(boolean enabled) {
+		return new StoneDetector(tokenRadius, targetRadius, detectionRegion, detectionMargin, regionFallback,
+				coarseTargetSearch, enabled, backgroundModel);
+	}
+
+	/**
+	 * Returns a detector separating the stones from the sheet with a model of
+	 * the empty sheet once it is learned. The model is only read.
+	 *
+	 * @param model Background model, or null for the color segmentation only
+	 * @return A detector with this model
+	 */
+	public StoneDetector withBackgroundModel(BackgroundModel model) {
+		return new StoneDetector(tokenRadius, targetRadius, detectionRegion, detectionMargin, regionFallback,
+				coarseTargetSearch, centerRefinement, model);
+	}
+
+	/**
+	 * Detects the target, then the stones around it.
+	 *
+	 * @param frame Camera frame, not modified
+	 * @return Target and stones found
+	 */
+	public Result detect(Mat frame) {
+		Target target = findTarget(frame);
+		return new Result(target, findStones(frame, target == null ? null : target.position));
+	}
+
+	/**
+	 * Detects the target.
+	 * The house is first located on a quarter-scale copy of the frame, then
+	 * refined in a window around it at full resolution. The whole frame is
+	 * searched when either step finds nothing.
+	 *
+	 * @param frame Camera frame, not modified
+	 * @return The target, or null if not found
+	 */
+	public Target findTarget(Mat frame) {
+		long start = System.nanoTime();
+		try {
+			return locateTarget(frame);
+		} finally {
+			targetTime.recordSince(start);
+		}
+	}
+
+	/**
+	 * Runs the coarse and fine target searches, then refines the centre.
+	 *
+	 * @param frame Camera frame, not modified
+	 * @return The target, or null if not found
+	 */
+	private Target locateTarget(Mat frame) {
+		int[] position = null;
+		if (coarseTargetSearch) {
+			Rect window = findTargetWindow(frame);
+			if (window != null) {
+				Mat windowImage = frame.submat(window);
+				position = findTargetCenter(windowImage, window.x, window.y);
+				windowImage.release();
+			}
+		}
+		if (position == null) {
+			position = findTargetCenter(frame, 0, 0);
+		}
+		if (position == null) {
+			return null;
+		}
+
+		CircleFit fit = null;
+		if (centerRefinement) {
+			fit = refineCircle(frame, position[0], position[1], targetRadius, TARGET_EDGE_BAND);
+			if (fit != null) {
+				position = fit.getPosition();
+			}
+		}
+		return new Target(position, fit);
+	}
+
+	/**
+	 * Detects every stone of a frame in a single pass.
+	 *
+	 * @param frame  Camera frame, not modified
+	 * @param target Position of the target [x,y], the stones being searched
+	 *               around it; null to search the whole frame
+	 * @return Unmodifiable list of the stones found, strongest first
+	 */
+	public List<DetectedStone> findStones(Mat frame, int[] target) {
+		return findStones(frame, getDetectionRegion(frame, target));
+	}
+
+	/**
+	 * Runs the token detection, in the detection region if there is one.
+	 *
+	 * @param image  Full camera frame
+	 * @param region Region to search, or null for the whole frame
+	 * @return Unmodifiable list of the stones found, in full-frame coordinates
+	 */
+	List<DetectedStone> findStones(Mat image, Rect region) {
+		Mat circles;
+		int offsetX = 0;
+		int offsetY = 0;
+		if (region != null) {
+			Mat regionImage = image.submat(region);
+			circles = findTokenCircles(regionImage, region);
+			regionImage.release();
+			offsetX = region.x;
+			offsetY = region.y;
+			if (circles.cols() == 0 && regionFallback) {
+				// Nothing near the house: search the whole frame
+				circles = findTokenCircles(image, null);
+				offsetX = 0;
+				offsetY = 0;
+			}
+		} else {
+			circles = findTokenCircles(image, null);
+		}
+
+		List<DetectedStone> stones = clusterCircles(circles, offsetX, offsetY);
+		long start = System.nanoTime();
+		stones = refineStones(image, stones);
+		refineTime.recordSince(start);
+		return stones;
+	}
+
+	/**
+	 * Computes the part of the frame where tokens are searched.
+	 * The region is a square around the target, of half-size targetRadius plus
+	 * the detection margin, clipped to the frame.
+	 *
+	 * @param image  Frame the region applies to
+	 * @param target Position of the target [x,y], or null if unknown
+	 * @return Region to search, or null to search the whole frame (region
+	 *         disabled or target not located yet)
+	 */
+	public Rect getDetectionRegion(Mat image, int[] target) {
+		if (!detectionRegion || target == null) {
+			return null;
+		}
+		int halfSize = (int) Math.ceil(targetRadius + detectionMargin);
+		int x0 = Math.max(0, target[0] - halfSize);
+		int y0 = Math.max(0, target[1] - halfSize);
+		int x1 = Math.min(image.cols(), target[0] + halfSize);
+		int y1 = Math.min(image.rows(), target[1] + halfSize);
+		// Region must still be able to hold a whole token
+		if (x1 - x0 < 2 * tokenRadius || y1 - y0 < 2 * tokenRadius) {
+			return null;
+		}
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Refines a circle found by the Hough transform with a least-squares fit
+	 * on the edge points close to it.
+	 *
+	 * @param image   Full camera frame
+	 * @param centerX Horizontal coordinate of the Hough centre
+	 * @param centerY Vertical coordinate of the Hough centre
+	 * @param radius  Expected radius
+	 * @param band    Distance from the expected circle within which edge points are used
+	 * @return The fitted circle, or null if the edges do not allow a fit close
+	 *         to the Hough circle
+	 */
+	private static CircleFit refineCircle(Mat image, double centerX, double centerY, double radius,
+			double band) {
+		DetectionContext context = DetectionContext.get();
+		int half = (int) Math.ceil(radius + band) + 2;
+		int x0 = Math.max(0, (int) centerX - half);
+		int y0 = Math.max(0, (int) centerY - half);
+		int x1 = Math.min(image.cols(), (int) centerX + half);
+		int y1 = Math.min(image.rows(), (int) centerY + half);
+		if (x1 - x0 < 3 || y1 - y0 < 3) {
+			return null;
+		}
+		Mat patch = image.submat(new Rect(x0, y0, x1 - x0, y1 - y0));
+		Imgproc.cvtColor(patch, context.refineGray, Imgproc.COLOR_BGR2GRAY);
+		patch.release();
+		Imgproc.GaussianBlur(context.refineGray, context.refineGray, new Size(3, 3), 0);
+		Imgproc.Canny(context.refineGray, context.refineEdges, 40, 120);
+		Core.findNonZero(context.refineEdges, context.edgePoints);
+
+		// Keep the edge points close to the expected circle
+		int nbPoints = context.edgePoints.rows();
+		if (nbPoints == 0) {
+			return null;
+		}
+		int[] data = new int[nbPoints * 2];
+		context.edgePoints.get(0, 0, data);
+		double[] xs = new double[nbPoints];
+		double[] ys = new double[nbPoints];
+		int count = 0;
+		for (int i = 0; i < nbPoints; i++) {
+			double x = data[2 * i] + x0;
+			double y = data[2 * i + 1] + y0;
+			if (Math.abs(Math.hypot(x - centerX, y - centerY) - radius) <= band) {
+				xs[count] = x;
+				ys[count] = y;
+				count++;
+			}
+		}
+
+		CircleFit fit = CircleFit.fit(xs, ys, count, centerX, centerY, radius);
+		if (fit == null || Math.hypot(fit.getX() - centerX, fit.getY() - centerY) > band
+				|| Math.abs(fit.getRadius() - radius) > band) {
+			return null;
+		}
+		return fit;
+	}
+
+	/**
+	 * Locates the house on a quarter-scale copy of the frame.
+	 *
+	 * @param image Full camera frame
+	 * @return Full-resolution window holding the house and the refinement
+	 *         margin, clipped to the frame, or null if no circle was found
+	 */
+	private Rect findTargetWindow(Mat image) {
+		DetectionContext context = DetectionContext.get();
+		Imgproc.resize(image, context.coarse, new Size(image.cols() / COARSE_SCALE, image.rows() / COARSE_SCALE),
+				0, 0, Imgproc.INTER_AREA);
+		Mat small = context.coarseEdges;
+		Imgproc.cvtColor(context.coarse, small, Imgproc.COLOR_BGR2GRAY);
+		Imgproc.Canny(small, small, 30, 100);
+		Imgproc.morphologyEx(small, small, Imgproc.MORPH_CLOSE, context.getCoarseTargetElement());
+
+		Mat circles = context.circles;
+		circles.release();
+		double radius = targetRadius / COARSE_SCALE;
+		Imgproc.HoughCircles(
+				small,
+				circles,
+				Imgproc.HOUGH_GRADIENT,
+				1.0,
+				1,
+				15,
+				5,
+				(int) (radius - 3),
+				(int) (radius + 3));
+		int nbCircles = circles.cols();
+		if (nbCircles == 0) {
+			return null;
+		}
+		double sumX = 0;
+		double sumY = 0;
+		for (int i = 0; i < nbCircles; i++) {
+			double[] circle = circles.get(0, i);
+			sumX += circle[0];
+			sumY += circle[1];
+		}
+		// Centre of the quarter-scale pixel in full-resolution coordinates
+		double centerX = (sumX / nbCircles + 0.5) * COARSE_SCALE;
+		double centerY = (sumY / nbCircles + 0.5) * COARSE_SCALE;
+
+		int halfSize = (int) Math.ceil(targetRadius + 8 + COARSE_MARGIN);
+		int x0 = Math.max(0, (int) centerX - halfSize);
+		int y0 = Math.max(0, (int) centerY - halfSize);
+		int x1 = Math.min(image.cols(), (int) centerX + halfSize);
+		int y1 = Math.min(image.rows(), (int) centerY + halfSize);
+		if (x1 <= x0 || y1 <= y0) {
+			return null;
+		}
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Runs the edge detection and circle search for the house at full resolution.
+	 *
+	 * @param image   Frame, or window of a frame, to search
+	 * @param offsetX X coordinate of image in the frame
+	 * @param offsetY Y coordinate of image in the frame
+	 * @return Average centre [x,y] of the circles found, in frame coordinates,
+	 *         or null if none was found
+	 */
+	private int[] findTargetCenter(Mat image, int offsetX, int offsetY) {
+		DetectionContext context = DetectionContext.get();
+		context.prepare(image.rows(), image.cols());
+
+		// Convert to grayscale for better efficiency
+		Mat grayImage = context.gray;
+		Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
+		// Edge detection with Canny - lower thresholds for imperfect circles
+		Imgproc.Canny(grayImage, grayImage, 30, 100); // Lower thresholds
+
+		// Larger morphological closing
+		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_CLOSE, context.getTargetElement());
+
+		// HoughCircles leaves its output untouched when nothing is found
+		Mat circles = context.circles;
+		circles.release();
+		int minRadius, maxRadiusSearch;
+
+		minRadius = (int) (targetRadius - 8); // Increase search range
+		maxRadiusSearch = (int) (targetRadius + 8);
+
+		// HoughCircles method for circle detection
+		Imgproc.HoughCircles(
+				grayImage,
+				circles,
+				Imgproc.HOUGH_GRADIENT,
+				1.0,
+				1,
+				15,
+				5,
+				minRadius,
+				maxRadiusSearch);
+		logger.log(Level.FINE, "Circles found: {0}", circles.cols());
+
+		// For robustness: take the average of the circle centers
+		double sumX = 0;
+		double sumY = 0;
+		int nbCircles = circles.cols(); // Total number of detected circles
+
+		// First pass: calculate averages
+		for (int i = 0; i < nbCircles; i++) {
+			double[] circle = circles.get(0, i);
+			sumX += circle[0];
+			sumY += circle[1];
+		}
+
+		// If circles were found, calculate the average
+		if (nbCircles == 0) {
+			return null;
+		}
+		return new int[] {
+				(int) (sumX / nbCircles) + offsetX,
+				(int) (sumY / nbCircles) + offsetY
+		};
+	}
+
+	/**
+	 * Refines the centre of each stone on the edges of the full frame.
+	 * Stones whose edges do not allow a fit keep their Hough centre.
+	 *
+	 * @param image  Full camera frame
+	 * @param stones Stones found by the Hough transform
+	 * @return Unmodifiable list of the refined stones, in the same order
+	 */
+	private List<DetectedStone> refineStones(Mat image, List<DetectedStone> stones) {
+		if (stones.isEmpty() || !centerRefinement) {
+			return stones;
+		}
+		List<DetectedStone> refined = new ArrayList<>(stones.size());
+		for (DetectedStone stone : stones) {
+			CircleFit fit = refineCircle(image, stone.getX(), stone.getY(), stone.getRadius(), STONE_EDGE_BAND);
+			if (fit == null) {
+				refined.add(stone);
+			} else {
+				refined.add(new DetectedStone(fit.getX(), fit.getY(), fit.getRadius(), stone.getConfidence(),
+						fit.getUncertainty()));
+			}
+		}
+		return Collections.unmodifiableList(refined);
+	}
+
+	/**
+	 * Groups Hough circles into stones.
+	 * Circles come sorted by decreasing accumulator votes; each one joins the
+	 * first stone whose centre is closer than the token radius, or starts a
+	 * new stone. Confidence grows with the number of circles of the stone.
+	 *
+	 * @param circles Circles (x, y, radius) returned by HoughCircles
+	 * @param offsetX Horizontal offset mapping circles to full-frame coordinates
+	 * @param offsetY Vertical offset mapping circles to full-frame coordinates
+	 * @return Unmodifiable list of stones, strongest first
+	 */
+	private List<DetectedStone> clusterCircles(Mat circles, int offsetX, int offsetY) {
+		int nbCircles = circles.cols();
+		if (nbCircles == 0) {
+			return List.of();
+		}
+		float[] data = new float[nbCircles * 3];
+		circles.get(0, 0, data);
+
+		// Running sums per cluster: x, y, radius, count
+		double[][] clusters = new double[nbCircles][];
+		int nbClusters = 0;
+		double joinDistance2 = tokenRadius * tokenRadius;
+		for (int i = 0; i < nbCircles; i++) {
+			double x = data[3 * i];
+			double y = data[3 * i + 1];
+			double radius = data[3 * i + 2];
+			double[] target = null;
+			for (int k = 0; k < nbClusters && target == null; k++) {
+				double[] cluster = clusters[k];
+				double dx = cluster[0] / cluster[3] - x;
+				double dy = cluster[1] / cluster[3] - y;
+				if (dx * dx + dy * dy < joinDistance2) {
+					target = cluster;
+				}
+			}
+			if (target == null) {
+				target = new double[4];
+				clusters[nbClusters++] = target;
+			}
+			target[0] += x;
+			target[1] += y;
+			target[2] += radius;
+			target[3] += 1;
+		}
+
+		List<DetectedStone> stones = new ArrayList<>(nbClusters);
+		for (int k = 0; k < nbClusters; k++) {
+			double[] cluster = clusters[k];
+			double count = cluster[3];
+			stones.add(new DetectedStone(
+					cluster[0] / count + offsetX,
+					cluster[1] / count + offsetY,
+					cluster[2] / count,
+					Math.min(1.0, count / FULL_CONFIDENCE_CIRCLES),
+					HOUGH_UNCERTAINTY));
+		}
+		return Collections.unmodifiableList(stones);
+	}
+
+	/**
+	 * Runs the segmentation, morphology and circle detection pipeline.
+	 * The stones are separated from the sheet by the background model once it
+	 * has been learned, and by color filtering otherwise.
+	 *
+	 * @param image  Frame, or part of a frame, to process
+	 * @param region Position of image in the frame, or null if image is the whole frame
+	 * @return Mat of detected circles (x, y, radius) in the coordinates of image,
+	 *         owned by the thread's detection context and reused on the next call
+	 */
+	private Mat findTokenCircles(Mat image, Rect region) {
+		DetectionContext context = DetectionContext.get();
+		context.prepare(image.rows(), image.cols());
+
+		Mat grayImage = context.gray;
+		long time = System.nanoTime();
+		if (backgroundModel != null && backgroundModel.foreground(image, region, context.hsv, grayImage)) {
+			time = masksTime.recordSince(time);
+		} else {
+			// Convert to HSV color space
+			Imgproc.cvtColor(image, context.hsv, Imgproc.COLOR_BGR2HSV);
+			time = hsvTime.recordSince(time);
+
+			// Detect colors
+			Core.inRange(context.hsv, LOWER_RED_1, UPPER_RED_1, context.redMask1);
+			Core.inRange(context.hsv, LOWER_RED_2, UPPER_RED_2, context.redMask2);
+			Core.inRange(context.hsv, LOWER_BLUE, UPPER_BLUE, context.blueMask); // Detect blue
+			Core.inRange(context.hsv, LOWER_WHITE, UPPER_WHITE, context.whiteMask);
+
+			// Combine red masks
+			Core.add(context.redMask1, context.redMask2, context.redMask);
+
+			// Convert the image to grayscale
+			Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
+			// Binary thresholding
+			Imgproc.threshold(grayImage, grayImage, 185, 255, Imgproc.THRESH_BINARY_INV);
+			// Remove red, blue, and white areas
+			Core.subtract(grayImage, context.redMask, grayImage);
+			Core.subtract(grayImage, context.blueMask, grayImage); // Subtract blue mask
+			Core.subtract(grayImage, context.whiteMask, grayImage);
+			time = masksTime.recordSince(time);
+		}
+
+		// Clean the image with morphology
+		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_OPEN, context.getOpenElement(tokenRadius));
+
+		// Morphological closing
+		Imgproc.morphologyEx(grayImage, grayImage, Imgproc.MORPH_CLOSE, context.getCloseElement(tokenRadius));
+		time = morphologyTime.recordSince(time);
+		// Circle detection
+		// HoughCircles leaves its output untouched when nothing is found
+		Mat circles = context.circles;
+		circles.release();
+		int minRadius = (int) (tokenRadius - 5);
+		int maxRadius = (int) (tokenRadius + 5);
+
+		// Optimized HoughCircles parameters
+		Imgproc.HoughCircles(
+				grayImage,
+				circles,
+				Imgproc.HOUGH_GRADIENT,
+				1.0,
+				1, // minimum distance between centers
+				30, // upper threshold for Canny
+				10, // accumulator threshold
+				minRadius,
+				maxRadius);
+		houghTime.recordSince(time);
+
+		return circles;
+	}
+
+	/**
+	 * Gets the radius of the stones.
+	 *
+	 * @return Radius in pixels
+	 */
+	public double getTokenRadius() {
+		return tokenRadius;
+	}
+
+	/**
+	 * Gets the radius of the house.
+	 *
+	 * @return Radius in pixels
+	 */
+	public double getTargetRadius() {
+		return targetRadius;
+	}
+}
@@ -0,0 +1,215 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the stones of a {@link Board}, for proximity queries.
+ * Cells are square and hashed into a fixed table of buckets, so the grid
+ * does not depend on the size of the frame; each bucket is a doubly linked
+ * list threaded through arrays indexed by turn, and adding, moving or
+ * removing a stone only relinks it. Buckets are stamped like the slots of
+ * the board, so clearing the grid takes constant time.
+ */
+final class StoneGrid {
+	private static final int BUCKETS = 256; // power of two
+
+	private final float cellSize;
+	private final int[] head = new int[BUCKETS];
+	private final int[] headStamp = new int[BUCKETS];
+	private int[] next = new int[0];
+	private int[] previous = new int[0];
+	private int[] cellX = new int[0];
+	private int[] cellY = new int[0];
+	private int[] member = new int[0]; // stamp the stone was inserted with
+	private int stamp = 1;
+
+	// Cells spanned by the stones inserted since the last clear
+	private int minCellX;
+	private int maxCellX;
+	private int minCellY;
+	private int maxCellY;
+	private boolean empty = true;
+
+	/**
+	 * Creates an empty grid.
+	 *
+	 * @param cellSize Side of a cell in pixels
+	 */
+	StoneGrid(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Makes room for stones up to the given turn.
+	 *
+	 * @param capacity Number of turns
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > next.length) {
+			next = Arrays.copyOf(next, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+			cellX = Arrays.copyOf(cellX, capacity);
+			cellY = Arrays.copyOf(cellY, capacity);
+			member = Arrays.copyOf(member, capacity);
+		}
+	}
+
+	/**
+	 * Removes every stone, in constant time.
+	 */
+	void clear() {
+		stamp++;
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(headStamp, 0);
+			Arrays.fill(member, 0);
+			stamp = 1;
+		}
+		empty = true;
+	}
+
+	/**
+	 * Adds a stone, or moves it if it is already in the grid.
+	 *
+	 * @param index Turn of the stone
+	 * @param x     Horizontal coordinate of the centre
+	 * @param y     Vertical coordinate of the centre
+	 */
+	void put(int index, float x, float y) {
+		int cx = cell(x);
+		int cy = cell(y);
+		if (member[index] == stamp) {
+			if (cellX[index] == cx && cellY[index] == cy) {
+				return;
+			}
+			remove(index);
+		}
+		int bucket = bucket(cx, cy);
+		int first = headStamp[bucket] == stamp ? head[bucket] : -1;
+		next[index] = first;
+		previous[index] = -1;
+		if (first >= 0) {
+			previous[first] = index;
+		}
+		head[bucket] = index;
+		headStamp[bucket] = stamp;
+		cellX[index] = cx;
+		cellY[index] = cy;
+		member[index] = stamp;
+
+		if (empty) {
+			minCellX = maxCellX = cx;
+			minCellY = maxCellY = cy;
+			empty = false;
+		} else {
+			minCellX = Math.min(minCellX, cx);
+			maxCellX = Math.max(maxCellX, cx);
+			minCellY = Math.min(minCellY, cy);
+			maxCellY = Math.max(maxCellY, cy);
+		}
+	}
+
+	/**
+	 * Removes a stone, if it is in the grid.
+	 *
+	 * @param index Turn of the stone
+	 */
+	void remove(int index) {
+		if (member[index] != stamp) {
+			return;
+		}
+		if (previous[index] >= 0) {
+			next[previous[index]] = next[index];
+		} else {
+			head[bucket(cellX[index], cellY[index])] = next[index];
+		}
+		if (next[index] >= 0) {
+			previous[next[index]] = previous[index];
+		}
+		member[index] = 0;
+	}
+
+	/**
+	 * Gets the first stone of a cell.
+	 *
+	 * @param cx Horizontal cell coordinate
+	 * @param cy Vertical cell coordinate
+	 * @return Turn of the stone, or -1 if the cell is empty
+	 */
+	int first(int cx, int cy) {
+		int bucket = bucket(cx, cy);
+		if (headStamp[bucket] != stamp) {
+			return -1;
+		}
+		return skip(head[bucket], cx, cy);
+	}
+
+	/**
+	 * Gets the stone following another one in the same cell.
+	 *
+	 * @param index Turn of the current stone
+	 * @return Turn of the next stone, or -1 if there is none
+	 */
+	int next(int index) {
+		return skip(next[index], cellX[index], cellY[index]);
+	}
+
+	/**
+	 * Skips the stones of other cells sharing the same bucket.
+	 *
+	 * @param index First stone to look at, or -1
+	 * @param cx    Horizontal cell coordinate
+	 * @param cy    Vertical cell coordinate
+	 * @return First stone of the cell from index, or -1
+	 */
+	private int skip(int index, int cx, int cy) {
+		while (index >= 0 && (cellX[index] != cx || cellY[index] != cy)) {
+			index = next[index];
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the cell coordinate of a pixel coordinate.
+	 *
+	 * @param value Coordinate in pixels
+	 * @return Cell coordinate
+	 */
+	int cell(double value) {
+		return (int) Math.floor(value / cellSize);
+	}
+
+	/**
+	 * Gets the side of a cell.
+	 *
+	 * @return Cell size in pixels
+	 */
+	float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Gets how many rings of cells around a cell must be visited to see
+	 * every stone of the grid.
+	 *
+	 * @param cx Horizontal cell coordinate
+	 * @param cy Vertical cell coordinate
+	 * @return Number of rings, -1 if the grid is empty
+	 */
+	int rings(int cx, int cy) {
+		if (empty) {
+			return -1;
+		}
+		return Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+	}
+
+	/**
+	 * Hashes cell coordinates into a bucket.
+	 *
+	 * @param cx Horizontal cell coordinate
+	 * @param cy Vertical cell coordinate
+	 * @return Bucket index
+	 */
+	private static int bucket(int cx, int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & (BUCKETS - 1);
+	}
+}
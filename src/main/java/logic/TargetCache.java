@@ -0,0 +1,182 @@
+package logic;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Last known target position, with a cheap check that it is still valid.
+ * Stores a quarter-resolution grayscale patch of the house when the target
+ * is detected, then looks for that patch in a small window around the known
+ * position with normalized correlation. The check takes about two milliseconds,
+ * against tens of milliseconds for a Hough detection of the house; a full
+ * detection is only needed when the patch is no longer found in place, for
+ * instance after the camera was bumped.
+ */
+public class TargetCache {
+	private static final int SCALE = 4;
+	private static final int SEARCH_MARGIN = 8; // quarter-scale pixels searched around the known position
+
+	private final Mat template = new Mat();
+	private final Mat window = new Mat();
+	private final Mat grayWindow = new Mat();
+	private final Mat scores = new Mat();
+	private int[] position;
+	private Rect templateArea; // full-resolution area the template was taken from
+	private double lastScore = Double.NaN;
+
+	private double minScore = 0.7; // correlation of a house still in place
+	private double maxShift = 3; // pixels the house may move before a new detection is needed
+
+	/**
+	 * Records a detected target and the patch of the house around it.
+	 *
+	 * @param frame    BGR frame the target was detected on
+	 * @param position Detected target position [x,y]
+	 */
+	public synchronized void store(Mat frame, int[] position) {
+		int half = (int) Math.ceil(ImageHandler.getTargetRadius()) + 2 * SCALE;
+		Rect area = clip(new Rect(position[0] - half, position[1] - half, 2 * half, 2 * half), frame);
+		if (area.width < 2 * SCALE || area.height < 2 * SCALE) {
+			invalidate();
+			return;
+		}
+		reduce(frame, area, template);
+		this.position = position.clone();
+		templateArea = area;
+		lastScore = 1;
+	}
+
+	/**
+	 * Checks that the house is still where it was detected.
+	 *
+	 * @param frame BGR frame to check
+	 * @return true if the stored patch is found in place, false if a new
+	 *         detection is needed or no target was stored
+	 */
+	public synchronized boolean validate(Mat frame) {
+		if (position == null) {
+			return false;
+		}
+		int margin = SEARCH_MARGIN * SCALE;
+		Rect search = clip(new Rect(templateArea.x - margin, templateArea.y - margin,
+				templateArea.width + 2 * margin, templateArea.height + 2 * margin), frame);
+		reduce(frame, search, grayWindow);
+		if (grayWindow.cols() < template.cols() || grayWindow.rows() < template.rows()) {
+			lastScore = Double.NaN;
+			return false;
+		}
+		Imgproc.matchTemplate(grayWindow, template, scores, Imgproc.TM_CCOEFF_NORMED);
+		Core.MinMaxLocResult best = Core.minMaxLoc(scores);
+		lastScore = best.maxVal;
+
+		int peakX = (int) best.maxLoc.x;
+		int peakY = (int) best.maxLoc.y;
+		// Sub-pixel peak, the quarter-scale grid alone is too coarse for the shift
+		double matchX = peakX;
+		double matchY = peakY;
+		if (peakX > 0 && peakX < scores.cols() - 1) {
+			matchX += peakOffset(scores.get(peakY, peakX - 1)[0], best.maxVal, scores.get(peakY, peakX + 1)[0]);
+		}
+		if (peakY > 0 && peakY < scores.rows() - 1) {
+			matchY += peakOffset(scores.get(peakY - 1, peakX)[0], best.maxVal, scores.get(peakY + 1, peakX)[0]);
+		}
+		double shiftX = search.x + matchX * SCALE - templateArea.x;
+		double shiftY = search.y + matchY * SCALE - templateArea.y;
+		return best.maxVal >= minScore && Math.abs(shiftX) <= maxShift && Math.abs(shiftY) <= maxShift;
+	}
+
+	/**
+	 * Locates the top of the parabola through three neighbouring scores.
+	 *
+	 * @param before Score before the peak
+	 * @param peak   Score at the peak
+	 * @param after  Score after the peak
+	 * @return Offset of the top from the peak, between -0.5 and 0.5
+	 */
+	private static double peakOffset(double before, double peak, double after) {
+		double curvature = before - 2 * peak + after;
+		if (curvature >= 0) {
+			return 0;
+		}
+		return Math.max(-0.5, Math.min(0.5, 0.5 * (before - after) / curvature));
+	}
+
+	/**
+	 * Reduces an area of a frame to a quarter-resolution grayscale patch.
+	 *
+	 * @param frame BGR frame
+	 * @param area  Area of the frame
+	 * @param dst   Receives the patch
+	 */
+	private void reduce(Mat frame, Rect area, Mat dst) {
+		Mat part = frame.submat(area);
+		Imgproc.resize(part, window, new Size(area.width / SCALE, area.height / SCALE), 0, 0,
+				Imgproc.INTER_AREA);
+		part.release();
+		Imgproc.cvtColor(window, dst, Imgproc.COLOR_BGR2GRAY);
+	}
+
+	/**
+	 * Clips a rectangle to the bounds of a frame.
+	 *
+	 * @param area  Rectangle to clip
+	 * @param frame Frame giving the bounds
+	 * @return The part of the rectangle inside the frame
+	 */
+	private static Rect clip(Rect area, Mat frame) {
+		int x0 = Math.max(0, area.x);
+		int y0 = Math.max(0, area.y);
+		int x1 = Math.min(frame.cols(), area.x + area.width);
+		int y1 = Math.min(frame.rows(), area.y + area.height);
+		return new Rect(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+	}
+
+	/**
+	 * Forgets the stored target.
+	 */
+	public synchronized void invalidate() {
+		position = null;
+		templateArea = null;
+		template.release();
+		lastScore = Double.NaN;
+	}
+
+	/**
+	 * Gets the stored target position.
+	 *
+	 * @return Target position [x,y], or null if none is stored
+	 */
+	public synchronized int[] getPosition() {
+		return position == null ? null : position.clone();
+	}
+
+	/**
+	 * Gets the correlation found by the last validation.
+	 *
+	 * @return Score between -1 and 1, or NaN if no validation could run
+	 */
+	public synchronized double getLastScore() {
+		return lastScore;
+	}
+
+	/**
+	 * Sets the correlation below which the house is considered moved or hidden.
+	 *
+	 * @param minScore Normalized correlation, between -1 and 1
+	 */
+	public synchronized void setMinScore(double minScore) {
+		this.minScore = minScore;
+	}
+
+	/**
+	 * Sets how far the house may move before a new detection is needed.
+	 *
+	 * @param maxShift Shift in pixels
+	 */
+	public synchronized void setMaxShift(double maxShift) {
+		this.maxShift = maxShift;
+	}
+}
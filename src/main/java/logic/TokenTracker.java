@@ -0,0 +1,266 @@
+package logic;
+
+/**
+ * Follows a token over successive detections to decide when it has come to rest.
+ * Smooths position and velocity with a constant-velocity Kalman filter on each
+ * axis, ignores isolated outliers and missed frames, and reports when the
+ * token starts moving, settles or is removed from the sheet.
+ */
+public class TokenTracker {
+
+	/**
+	 * Changes of the tracked token reported by {@link TokenTracker#update(int[], long)}.
+	 */
+	public enum Event {
+		/** A token appeared or started moving again after being at rest */
+		MOVING,
+		/** The token has been at rest for the required number of detections */
+		SETTLED,
+		/** The token has not been seen for the required number of detections */
+		REMOVED
+	}
+
+	private enum State {
+		ABSENT, MOVING, SETTLED
+	}
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	// Tuning, in pixels and seconds
+	private double measurementNoise = 2.0; // standard deviation of a detection
+	private double accelerationNoise = 100.0; // standard deviation of the acceleration
+	private double settleSpeed = 25.0; // speed under which the token is at rest
+	private double outlierGate = 5.0; // innovations beyond this many sigmas are ignored
+	private int settleConfidence = 3;
+	private int removalConfidence = 3;
+
+	private State state = State.ABSENT;
+	private final Axis xAxis = new Axis();
+	private final Axis yAxis = new Axis();
+	private long lastTimestamp;
+	private int restCount;
+	private int missCount;
+
+	/**
+	 * Kalman filter on one axis with state [position, velocity].
+	 */
+	private static class Axis {
+		double position;
+		double velocity;
+		double pPP;
+		double pPV;
+		double pVV;
+
+		void reset(double measurement, double measurementVariance) {
+			position = measurement;
+			velocity = 0;
+			pPP = measurementVariance;
+			pPV = 0;
+			pVV = 1e6;
+		}
+
+		void predict(double dt, double accelerationVariance) {
+			position += velocity * dt;
+			double dt2 = dt * dt;
+			double nPP = pPP + 2 * dt * pPV + dt2 * pVV;
+			double nPV = pPV + dt * pVV;
+			pPP = nPP + accelerationVariance * dt2 * dt2 / 4;
+			pPV = nPV + accelerationVariance * dt2 * dt / 2;
+			pVV = pVV + accelerationVariance * dt2;
+		}
+
+		double innovationVariance(double measurementVariance) {
+			return pPP + measurementVariance;
+		}
+
+		void correct(double measurement, double measurementVariance) {
+			double s = innovationVariance(measurementVariance);
+			double kP = pPP / s;
+			double kV = pPV / s;
+			double innovation = measurement - position;
+			position += kP * innovation;
+			velocity += kV * innovation;
+			double nPP = (1 - kP) * pPP;
+			double nPV = (1 - kP) * pPV;
+			double nVV = pVV - kV * pPV;
+			pPP = nPP;
+			pPV = nPV;
+			pVV = nVV;
+		}
+	}
+
+	/**
+	 * Feeds one detection result to the tracker.
+	 *
+	 * @param measurement Detected token position [x,y], or null if no token was found
+	 * @param timestamp   Time of the frame in {@link System#nanoTime()} units
+	 * @return The event triggered by this detection, or null if nothing changed
+	 */
+	public Event update(int[] measurement, long timestamp) {
+		if (state == State.ABSENT) {
+			if (measurement == null) {
+				return null;
+			}
+			start(measurement, timestamp);
+			return Event.MOVING;
+		}
+
+		double dt = Math.max(1e-3, (timestamp - lastTimestamp) / NANOS_PER_SECOND);
+		lastTimestamp = timestamp;
+		double accelerationVariance = accelerationNoise * accelerationNoise;
+		xAxis.predict(dt, accelerationVariance);
+		yAxis.predict(dt, accelerationVariance);
+
+		if (measurement == null || isOutlier(measurement)) {
+			missCount++;
+			restCount = 0;
+			if (missCount >= removalConfidence) {
+				state = State.ABSENT;
+				return Event.REMOVED;
+			}
+			return null;
+		}
+		missCount = 0;
+		double measurementVariance = measurementNoise * measurementNoise;
+		xAxis.correct(measurement[0], measurementVariance);
+		yAxis.correct(measurement[1], measurementVariance);
+
+		boolean atRest = getSpeed() < settleSpeed;
+		if (state == State.MOVING) {
+			restCount = atRest ? restCount + 1 : 0;
+			if (restCount >= settleConfidence) {
+				state = State.SETTLED;
+				return Event.SETTLED;
+			}
+		} else if (getSpeed() > 2 * settleSpeed) {
+			// Hysteresis so a settled token is not flagged as moving by noise
+			state = State.MOVING;
+			restCount = 0;
+			return Event.MOVING;
+		}
+		return null;
+	}
+
+	/**
+	 * Starts tracking a newly seen token.
+	 *
+	 * @param measurement First detected position
+	 * @param timestamp   Time of the frame
+	 */
+	private void start(int[] measurement, long timestamp) {
+		double measurementVariance = measurementNoise * measurementNoise;
+		xAxis.reset(measurement[0], measurementVariance);
+		yAxis.reset(measurement[1], measurementVariance);
+		lastTimestamp = timestamp;
+		restCount = 0;
+		missCount = 0;
+		state = State.MOVING;
+	}
+
+	/**
+	 * Checks whether a detection is too far from the prediction to belong to the
+	 * tracked token, which happens with a single noisy frame.
+	 *
+	 * @param measurement Detected position
+	 * @return true if the detection must be ignored
+	 */
+	private boolean isOutlier(int[] measurement) {
+		if (missCount + 1 >= removalConfidence) {
+			// Accept the detection rather than lose the token
+			return false;
+		}
+		double measurementVariance = measurementNoise * measurementNoise;
+		double dx = measurement[0] - xAxis.position;
+		double dy = measurement[1] - yAxis.position;
+		double distance2 = dx * dx / xAxis.innovationVariance(measurementVariance)
+				+ dy * dy / yAxis.innovationVariance(measurementVariance);
+		return distance2 > outlierGate * outlierGate;
+	}
+
+	/**
+	 * Forgets the tracked token.
+	 */
+	public void reset() {
+		state = State.ABSENT;
+		restCount = 0;
+		missCount = 0;
+	}
+
+	/**
+	 * Gets the smoothed position of the tracked token.
+	 *
+	 * @return Position [x,y] rounded to pixels, or null if no token is tracked
+	 */
+	public int[] getPosition() {
+		if (state == State.ABSENT) {
+			return null;
+		}
+		return new int[] { (int) Math.round(xAxis.position), (int) Math.round(yAxis.position) };
+	}
+
+	/**
+	 * Gets the smoothed speed of the tracked token.
+	 *
+	 * @return Speed in pixels per second, 0 if no token is tracked
+	 */
+	public double getSpeed() {
+		if (state == State.ABSENT) {
+			return 0;
+		}
+		return Math.hypot(xAxis.velocity, yAxis.velocity);
+	}
+
+	/**
+	 * Checks whether the tracked token is currently at rest.
+	 *
+	 * @return true if a token is tracked and has settled
+	 */
+	public boolean isSettled() {
+		return state == State.SETTLED;
+	}
+
+	/**
+	 * Sets the speed under which the token is considered at rest.
+	 *
+	 * @param settleSpeed Speed in pixels per second
+	 */
+	public void setSettleSpeed(double settleSpeed) {
+		this.settleSpeed = settleSpeed;
+	}
+
+	/**
+	 * Sets how many consecutive detections at rest are needed to report SETTLED.
+	 *
+	 * @param settleConfidence Number of detections
+	 */
+	public void setSettleConfidence(int settleConfidence) {
+		this.settleConfidence = settleConfidence;
+	}
+
+	/**
+	 * Sets how many consecutive missed detections are needed to report REMOVED.
+	 *
+	 * @param removalConfidence Number of detections
+	 */
+	public void setRemovalConfidence(int removalConfidence) {
+		this.removalConfidence = removalConfidence;
+	}
+
+	/**
+	 * Sets the expected noise of the detections.
+	 *
+	 * @param measurementNoise Standard deviation of a detection in pixels
+	 */
+	public void setMeasurementNoise(double measurementNoise) {
+		this.measurementNoise = measurementNoise;
+	}
+
+	/**
+	 * Sets how abruptly the token is expected to change speed.
+	 *
+	 * @param accelerationNoise Standard deviation of the acceleration in pixels per second squared
+	 */
+	public void setAccelerationNoise(double accelerationNoise) {
+		this.accelerationNoise = accelerationNoise;
+	}
+}
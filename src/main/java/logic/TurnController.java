@@ -0,0 +1,173 @@
+package logic;
+
+/**
+ * Turn logic of a match, driven by detection results.
+ * Feeds the detections to the token tracker, places the stone of the turn
+ * once it is at rest, waits for it to be taken off the sheet and ends the
+ * turn. Has no user interface: the game screen and the headless
+ * {@link ReplayEngine} drive it the same way, and are told about each step
+ * through a {@link Listener}.
+ * Must be used from a single thread.
+ */
+public class TurnController {
+	// The token tracker is tuned for detections about 200 ms apart
+	private static final long TURN_CHECK_INTERVAL_NS = 200_000_000L;
+	// Consecutive frames the place of the settled stone must be seen empty
+	private static final int REMOVAL_FRAMES = 3;
+
+	/**
+	 * Steps of a turn reported to the display or to the replay.
+	 */
+	public interface Listener {
+		/**
+		 * A stone is moving on the sheet: the player is placing it.
+		 */
+		void stoneMoving();
+
+		/**
+		 * The stone of the turn came to rest and was placed on the board.
+		 *
+		 * @param turn      Turn of the stone
+		 * @param advantage Player having the advantage, as given by {@link Gameplay#getAdvantage()}
+		 */
+		void stoneSettled(int turn, int advantage);
+
+		/**
+		 * The turn ended.
+		 *
+		 * @param roundEnded true if the end is over, the board being cleared
+		 *                   for the next one or the match being finished
+		 */
+		void turnCompleted(boolean roundEnded);
+	}
+
+	private final Gameplay gameplay;
+	private final DetectionPipeline pipeline;
+	private final Listener listener;
+	private final TokenTracker tracker = new TokenTracker();
+	private boolean turnActive;
+	private boolean endOfTurn;
+	private long lastTurnCheck;
+	private int vacantFrames;
+	private int rounds;
+
+	/**
+	 * Creates the turn logic of a match.
+	 *
+	 * @param gameplay Game state to update
+	 * @param pipeline Detection pipeline, switched to the removal check while a
+	 *                 settled stone waits to be taken off the sheet
+	 * @param listener Told about each step of the turns
+	 */
+	public TurnController(Gameplay gameplay, DetectionPipeline pipeline, Listener listener) {
+		this.gameplay = gameplay;
+		this.pipeline = pipeline;
+		this.listener = listener;
+		rounds = gameplay.getCurrentRound();
+	}
+
+	/**
+	 * Starts following the detections; until then they are ignored.
+	 */
+	public void start() {
+		turnActive = true;
+	}
+
+	/**
+	 * Checks whether the detections are followed.
+	 *
+	 * @return true once {@link #start()} has been called
+	 */
+	public boolean isActive() {
+		return turnActive;
+	}
+
+	/**
+	 * Checks whether the stone of the turn is at rest and waits to be removed.
+	 *
+	 * @return true if the turn is ending
+	 */
+	public boolean isEndOfTurn() {
+		return endOfTurn;
+	}
+
+	/**
+	 * Handles a detection result.
+	 * The removal check is cheap enough to run on every result; the full turn
+	 * logic runs on results about 200 ms apart.
+	 *
+	 * @param result Detection result of the latest processed frame
+	 */
+	public void onResult(FrameResult result) {
+		if (turnActive && result.getRegionOccupied() != null) {
+			checkRemoval(result.getRegionOccupied());
+		} else if (turnActive && result.getCaptureTimestamp() - lastTurnCheck >= TURN_CHECK_INTERVAL_NS) {
+			lastTurnCheck = result.getCaptureTimestamp();
+			checkTurn(result);
+		}
+	}
+
+	/**
+	 * Monitors token stability and position.
+	 * Feeds the detection to the token tracker and ends the placement as soon as
+	 * the tracker reports the token at rest, then waits for its removal.
+	 *
+	 * @param result Detection result of the latest processed frame
+	 */
+	private void checkTurn(FrameResult result) {
+		int[] actualPosition = result.getTokenPosition();
+		TokenTracker.Event event = tracker.update(actualPosition, result.getCaptureTimestamp());
+
+		if (event == TokenTracker.Event.MOVING && !endOfTurn) {
+			gameplay.findTarget(result.getTargetPosition());
+			listener.stoneMoving();
+		} else if (event == TokenTracker.Event.SETTLED && !endOfTurn) {
+			endOfTurn = true;
+			gameplay.findTarget(result.getTargetPosition());
+			gameplay.findToken(result.getStones());
+			listener.stoneSettled(gameplay.getCurrentTurn(), gameplay.getAdvantage());
+			// Wait for the removal by watching the place of the stone only
+			vacantFrames = 0;
+			pipeline.watchRemoval(tracker.getPosition());
+		} else if (event == TokenTracker.Event.REMOVED) {
+			if (actualPosition == null) {
+				gameplay.markSheetEmpty();
+			}
+			if (endOfTurn) {
+				endOfTurn = false;
+				pipeline.stopWatching();
+				completeTurn();
+			}
+		}
+	}
+
+	/**
+	 * Ends the turn once the place of the settled stone has been seen empty on
+	 * enough consecutive frames, without waiting for the full detection to
+	 * lose the stone.
+	 *
+	 * @param occupied Whether the place of the stone is still occupied in the latest frame
+	 */
+	private void checkRemoval(boolean occupied) {
+		vacantFrames = occupied ? 0 : vacantFrames + 1;
+		if (vacantFrames < REMOVAL_FRAMES || !endOfTurn) {
+			return;
+		}
+		vacantFrames = 0;
+		pipeline.stopWatching();
+		tracker.reset();
+		gameplay.markTokenRemoved();
+		endOfTurn = false;
+		completeTurn();
+	}
+
+	/**
+	 * Ends the current turn, also when asked by the player.
+	 */
+	public void completeTurn() {
+		gameplay.endTurn();
+		boolean roundEnded = gameplay.getCurrentRound() != rounds || gameplay.isGameFinished();
+		rounds = gameplay.getCurrentRound();
+		listener.turnCompleted(roundEnded);
+	}
+}
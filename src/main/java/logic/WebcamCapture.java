@@ -2,9 +2,6 @@ package logic;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
-import org.opencv.imgcodecs.Imgcodecs;
 import java.io.File;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,11 +13,8 @@ import java.util.logging.Logger;
  */
 public class WebcamCapture {
 	private static final Logger logger = Logger.getLogger(WebcamCapture.class.getName());
-	private static boolean expositionSet = false;
-	private static final int CAMERA_WIDTH = 1280;
-	private static final int CAMERA_HEIGHT = 720;
-	private static final int EXPOSITION_VALUE = -8;
-	private static VideoCapture camera;
+	private static volatile boolean expositionSet = false;
+	private static CaptureSession session;
 	private static final String USB_DEVICE_ID = "USB\\VID_045E&PID_075D&MI_00\\7&BDE31B4&0&0000";
 
 	static {
@@ -28,55 +22,58 @@ public class WebcamCapture {
 	}
 
 	/**
-	 * Captures an image from the webcam with specified parameters.
-	 * Handles camera initialization, image capture, and file saving.
+	 * Opens the shared capture session for the camera matching the USB ID.
+	 * Frames are then published on the {@link FrameBus} until {@link #closeSession()}
+	 * is called.
 	 *
-	 * @param filename Name of the file to save the captured image
+	 * @param filename    Name of the file frames are dumped to in debug mode
 	 * @param usbDeviceID USB device identifier for the camera
-	 * @param file File object for saving the image
-	 * @return Mat object containing the captured image, or null if capture fails
+	 * @return The running capture session, or null if no camera matches the USB ID
 	 */
-	public static Mat captureImage(String filename, String usbDeviceID, File file) {
+	public static synchronized CaptureSession openSession(String filename, String usbDeviceID) {
+		if (session != null && session.isRunning()) {
+			return session;
+		}
+		int cameraIndex = findCameraByUSBID(usbDeviceID);
 
-		try {
-			int cameraIndex = findCameraByUSBID(USB_DEVICE_ID);
+		if (cameraIndex == -1) {
+			logger.log(Level.SEVERE, "Error: Unable to find webcam with specified USB ID");
+			return null;
+		}
 
-			if (cameraIndex == -1) {
-				System.out.println("Error: Unable to find webcam with specified USB ID");
-				return null;
-			}
+		FrameBus.getInstance().setDebugFilename(filename);
+		session = new CaptureSession(cameraIndex, FrameBus.getInstance());
+		session.start();
+		return session;
+	}
 
-			camera = new VideoCapture(cameraIndex);
+	/**
+	 * Stops the shared capture session and releases the camera.
+	 */
+	public static synchronized void closeSession() {
+		if (session != null) {
+			session.close();
+			session = null;
+		}
+	}
 
-			if (!camera.isOpened()) {
-				logger.log(Level.SEVERE, "Error: Failed to initialize camera capture");
+	/**
+	 * Returns the latest image from the webcam.
+	 * Opens the shared capture session on first use instead of opening the
+	 * device for every image.
+	 *
+	 * @param filename Name of the file frames are dumped to in debug mode
+	 * @param usbDeviceID USB device identifier for the camera
+	 * @param file File object for the debug image (not used)
+	 * @return Mat object containing the captured image, or null if capture fails
+	 */
+	public static Mat captureImage(String filename, String usbDeviceID, File file) {
+		try {
+			CaptureSession current = openSession(filename, usbDeviceID);
+			if (current == null) {
 				return null;
 			}
-
-			// Set optional camera parameters
-			camera.set(Videoio.CAP_PROP_FRAME_WIDTH, CAMERA_WIDTH);
-			camera.set(Videoio.CAP_PROP_FRAME_HEIGHT, CAMERA_HEIGHT);
-			// Set exposure value if specified
-			if (expositionSet) {
-				camera.set(Videoio.CAP_PROP_EXPOSURE, EXPOSITION_VALUE);
-			}
-
-			Mat frame = new Mat();
-			if (camera.read(frame)) {
-				Imgcodecs.imwrite(filename, frame);
-				Thread.sleep(100);
-			} else {
-				System.out.println("Capture attempt failed, retrying...");
-				try {
-					Thread.sleep(500); 
-				} catch (InterruptedException e) {
-					logger.log(Level.SEVERE, "Thread interrupted during capture retry", e);
-				}
-			}
-
-			camera.release();
-			System.out.println("Image capture completed successfully");
-			return frame;
+			return current.getLatestFrame();
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Error during image capture", e);
 			return null;
@@ -90,7 +87,7 @@ public class WebcamCapture {
 	 * @param usbDeviceID USB device identifier to search for
 	 * @return Camera index if found, -1 if not found
 	 */
-	private static int findCameraByUSBID(String usbDeviceID) {
+	static int findCameraByUSBID(String usbDeviceID) {
         if (usbDeviceID.equals(USB_DEVICE_ID)) {
             return 1; 
         }
@@ -106,5 +103,14 @@ public class WebcamCapture {
 	public static void setExpositionSet(boolean expositionSet) {
 		WebcamCapture.expositionSet = expositionSet;
 	}
+
+	/**
+	 * Checks whether exposure settings should be applied to the camera.
+	 *
+	 * @return True if exposure settings are enabled
+	 */
+	public static boolean isExpositionSet() {
+		return expositionSet;
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package view;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Converts OpenCV frames into a JavaFX image for the live preview.
+ * Copies the whole frame into a byte buffer in one call and pushes it to a
+ * single WritableImage that is reused from one frame to the next.
+ */
+public class MatImageConverter {
+	static {
+		// The converter allocates a Mat on construction, possibly before any other OpenCV class
+		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	private final Mat bgraFrame = new Mat();
+	private byte[] buffer;
+	private int width;
+	private int height;
+	private WritableImage image;
+
+	/**
+	 * Packs a frame into the internal BGRA byte buffer.
+	 * Only touches OpenCV and Java memory, so it can run outside the JavaFX thread.
+	 *
+	 * @param frame BGR, BGRA or grayscale 8-bit frame
+	 * @return Buffer holding the packed pixels, 4 bytes per pixel
+	 */
+	public byte[] pack(Mat frame) {
+		switch (frame.channels()) {
+			case 4:
+				frame.copyTo(bgraFrame);
+				break;
+			case 1:
+				Imgproc.cvtColor(frame, bgraFrame, Imgproc.COLOR_GRAY2BGRA);
+				break;
+			default:
+				Imgproc.cvtColor(frame, bgraFrame, Imgproc.COLOR_BGR2BGRA);
+				break;
+		}
+		width = bgraFrame.cols();
+		height = bgraFrame.rows();
+		int size = width * height * 4;
+		if (buffer == null || buffer.length != size) {
+			buffer = new byte[size];
+		}
+		bgraFrame.get(0, 0, buffer);
+		return buffer;
+	}
+
+	/**
+	 * Writes the last packed buffer into the reused WritableImage.
+	 * A new image is only created when the frame size changes.
+	 * Must be called on the JavaFX application thread.
+	 *
+	 * @return Image holding the last packed frame, or null if nothing was packed yet
+	 */
+	public WritableImage toImage() {
+		if (buffer == null) {
+			return null;
+		}
+		if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+			image = new WritableImage(width, height);
+		}
+		image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(), buffer, 0,
+				width * 4);
+		return image;
+	}
+
+	/**
+	 * Converts a frame to a JavaFX image in one step.
+	 * Must be called on the JavaFX application thread.
+	 *
+	 * @param frame BGR, BGRA or grayscale 8-bit frame
+	 * @return Reused image holding the frame
+	 */
+	public WritableImage convert(Mat frame) {
+		pack(frame);
+		return toImage();
+	}
+}
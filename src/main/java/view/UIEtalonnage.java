@@ -1,7 +1,9 @@
 package view;
 
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
 import org.opencv.core.Mat;
-import org.opencv.imgcodecs.Imgcodecs;
 
 
 import org.opencv.core.Point;
@@ -11,13 +13,14 @@ import org.opencv.imgproc.Imgproc;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundImage;
@@ -28,11 +31,12 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import logic.BackgroundModel;
+import logic.FrameBus;
 import logic.ImageHandler;
 import logic.WebcamCapture;
 
@@ -42,10 +46,24 @@ import logic.WebcamCapture;
  * auto-exposure settings, and visual feedback of the camera feed.
  */
 public class UIEtalonnage extends Application {
+	private static final Logger logger = Logger.getLogger(UIEtalonnage.class.getName());
 	private Timeline timeline;
 	private VBox imagePane;
 	private Text tokenRadiusText;
 	private Text targetRadiusText;  // Nouveau texte pour Target Radius
+	private final MatImageConverter converter = new MatImageConverter();
+	private WritableImage previewImage;
+	private final VisionService vision = new VisionService();
+	private Button autoExpositionButton;
+	private Button backgroundButton;
+	private ProgressBar expositionProgress;
+
+	// Exposure values tried by the auto-exposure, and frames skipped after each change
+	private static final int FIRST_EXPOSITION = -3;
+	private static final int LAST_EXPOSITION = 1;
+	private static final int SETTLE_FRAMES = 3;
+	// Frames of the empty sheet averaged into the background model
+	private static final int BACKGROUND_FRAMES = 30;
 
 	/**
      * Initializes and displays the calibration interface.
@@ -92,15 +110,19 @@ public class UIEtalonnage extends Application {
 
 		// Create buttons with proportional sizes
 		Button btnQuit = new Button("Retour");
-		Button autoExpositionButton = new Button("Auto Exposition");
+		autoExpositionButton = new Button("Auto Exposition");
+		backgroundButton = new Button("Capturer Fond");
 		btnQuit.setOnAction(e -> openUIGame(primaryStage));
 		autoExpositionButton.setOnAction(e -> AutoExposition());
+		backgroundButton.setOnAction(e -> captureBackground());
 		
 		// Adjust button sizes
 		btnQuit.setPrefWidth(300);
 		autoExpositionButton.setPrefWidth(300);
+		backgroundButton.setPrefWidth(300);
 		btnQuit.setPrefHeight(75);
 		autoExpositionButton.setPrefHeight(75);
+		backgroundButton.setPrefHeight(75);
 
 		 // button styles
 		String buttonStyle = "-fx-background-image: url('bouttonCurling.png');"
@@ -111,8 +133,10 @@ public class UIEtalonnage extends Application {
 		+ "-fx-background-radius: 60;";
 		btnQuit.setStyle(buttonStyle);
 		autoExpositionButton.setStyle(buttonStyle);
+		backgroundButton.setStyle(buttonStyle);
 		
 		autoExpositionButton.setAlignment(Pos.BOTTOM_CENTER);
+		backgroundButton.setAlignment(Pos.BOTTOM_CENTER);
 		btnQuit.setAlignment(Pos.BOTTOM_CENTER);
 		
 		// Configure token radius controls
@@ -152,7 +176,11 @@ public class UIEtalonnage extends Application {
 		// Configure button container
 		VBox buttonBox = new VBox(25);
 		buttonBox.setAlignment(Pos.CENTER);
-		buttonBox.getChildren().addAll(autoExpositionButton, radiusControls, btnQuit);
+		expositionProgress = new ProgressBar(0);
+		expositionProgress.setPrefWidth(300);
+		expositionProgress.setVisible(false);
+		buttonBox.getChildren().addAll(autoExpositionButton, backgroundButton, expositionProgress, radiusControls,
+				btnQuit);
 
 		// Configure image container
 		imagePane = new VBox(5);
@@ -237,80 +265,192 @@ public class UIEtalonnage extends Application {
 	private void openUIGame(Stage primaryStage) {
 		UIGame uiGame = new UIGame();
 		this.timeline.stop();
+		vision.close();
 		uiGame.start(primaryStage);
 	}
 
 	/**
      * Performs automatic exposure calibration.
-     * Tests multiple exposure values to find optimal camera settings.
+     * Tests multiple exposure values to find optimal camera settings, on a
+     * vision worker so the interface stays responsive; the progress bar
+     * follows the values tried.
      */
 	private void AutoExposition() {
+		Task<Integer> task = new Task<Integer>() {
+			@Override
+			protected Integer call() throws InterruptedException {
+				return searchExposition(this::updateProgress);
+			}
+		};
+		task.setOnSucceeded(e -> {
+			logger.info("Exposition Value: " + task.getValue());
+			endCalibrationTask();
+		});
+		runCalibrationTask(task);
+	}
+
+	/**
+	 * Learns the background model from frames of the empty sheet.
+	 * The sheet must be empty while the frames are captured; the progress bar
+	 * follows the frames learned.
+	 */
+	private void captureBackground() {
+		Task<Integer> task = new Task<Integer>() {
+			@Override
+			protected Integer call() throws InterruptedException {
+				return learnBackground(this::updateProgress);
+			}
+		};
+		task.setOnSucceeded(e -> {
+			logger.info("Fond capturé : " + task.getValue() + " images");
+			endCalibrationTask();
+		});
+		runCalibrationTask(task);
+	}
+
+	/**
+	 * Runs a calibration task on a vision worker, showing its progress and
+	 * disabling the calibration buttons until it is over.
+	 *
+	 * @param task Task to run, whose success handler calls {@link #endCalibrationTask()}
+	 */
+	private void runCalibrationTask(Task<?> task) {
+		expositionProgress.progressProperty().bind(task.progressProperty());
+		expositionProgress.setVisible(true);
+		autoExpositionButton.setDisable(true);
+		backgroundButton.setDisable(true);
+		task.setOnFailed(e -> endCalibrationTask());
+		vision.execute(task);
+	}
+
+	/**
+	 * Hides the progress bar once a calibration task is over.
+	 */
+	private void endCalibrationTask() {
+		expositionProgress.progressProperty().unbind();
+		expositionProgress.setVisible(false);
+		autoExpositionButton.setDisable(false);
+		backgroundButton.setDisable(false);
+	}
+
+	/**
+	 * Tries each exposure value on a frame captured after the change and keeps
+	 * the middle of the range where the target is found.
+	 * Runs outside the JavaFX thread.
+	 *
+	 * @param progress Receives the number of values tried and the total
+	 * @return The exposure value applied
+	 * @throws InterruptedException if the task is cancelled while waiting for frames
+	 */
+	private static int searchExposition(BiConsumer<Long, Long> progress)
+			throws InterruptedException {
 		WebcamCapture.setExpositionSet(true);
-        ImageHandler.setExpositionValue(-3);
-        Boolean endCheck = true;
-        Integer nbCheck = 0;
-        int lastCheck =0;
-        Mat image = Imgcodecs.imread("./image.jpg");
-        System.out.println("Exposition Value: " + ImageHandler.getExpositionValue());
-        while (endCheck) {
-            image = Imgcodecs.imread("./image.jpg");
-            updateImage();
-            ImageHandler.setExpositionValue(ImageHandler.getExpositionValue()+1);
-            if (ImageHandler.getTargetPosition(image) !=null) {
-                nbCheck++;
-                lastCheck = ImageHandler.getExpositionValue();
-            }
-            if (ImageHandler.getExpositionValue() == 2) {
-                endCheck = false;
-            }
-        }
-        if (nbCheck == 0) {
-            System.out.println("No Exposition Value found for this target");
-        }
-        Integer midle = (int) (nbCheck/2);
-        
-        ImageHandler.setExpositionValue(lastCheck-midle-6);
-    }
+		FrameBus frameBus = FrameBus.getInstance();
+		long total = LAST_EXPOSITION - FIRST_EXPOSITION + 1;
+		int nbCheck = 0;
+		int lastCheck = 0;
+		for (int exposition = FIRST_EXPOSITION; exposition <= LAST_EXPOSITION; exposition++) {
+			ImageHandler.setExpositionValue(exposition);
+			// Skip the frames that may have been captured with the previous setting
+			long sequence = frameBus.getSequence();
+			for (int i = 0; i < SETTLE_FRAMES; i++) {
+				sequence = frameBus.awaitFrame(sequence, 1000);
+			}
+			Mat image = frameBus.getLatestFrame();
+			if (image != null) {
+				if (ImageHandler.getTargetPosition(image) != null) {
+					nbCheck++;
+					lastCheck = exposition + 1;
+				}
+				image.release();
+			}
+			progress.accept((long) (exposition - FIRST_EXPOSITION + 1), total);
+		}
+		if (nbCheck == 0) {
+			logger.warning("No Exposition Value found for this target");
+		}
+		Integer midle = (int) (nbCheck / 2);
+
+		ImageHandler.setExpositionValue(lastCheck - midle - 6);
+		// The sheet learned with the previous exposure no longer matches the frames
+		ImageHandler.getBackgroundModel().reset();
+		return ImageHandler.getExpositionValue();
+	}
+
+	/**
+	 * Resets the background model and learns it from new frames of the empty sheet.
+	 * Runs outside the JavaFX thread.
+	 *
+	 * @param progress Receives the number of frames learned and the total
+	 * @return The number of frames learned
+	 * @throws InterruptedException if the task is cancelled while waiting for frames
+	 */
+	private static int learnBackground(BiConsumer<Long, Long> progress) throws InterruptedException {
+		FrameBus frameBus = FrameBus.getInstance();
+		BackgroundModel model = ImageHandler.getBackgroundModel();
+		model.reset();
+		long sequence = frameBus.getSequence();
+		for (int i = 0; i < BACKGROUND_FRAMES; i++) {
+			sequence = frameBus.awaitFrame(sequence, 1000);
+			Mat image = frameBus.getLatestFrame();
+			if (image != null) {
+				model.learn(image);
+				image.release();
+			}
+			progress.accept((long) (i + 1), (long) BACKGROUND_FRAMES);
+		}
+		if (!model.isReady()) {
+			logger.warning("Not enough frames to learn the background");
+		}
+		return model.getLearnedFrames();
+	}
 
 	/**
      * Updates the camera preview display.
-     * Captures current frame and draws detection circles for visual feedback.
+     * Captures current frame and draws detection circles for visual feedback
+     * on a vision worker, then copies it to the preview on the JavaFX thread.
+     * Skipped while the previous frame is still being prepared.
      */
 	private void updateImage() {
-	    Mat image = Imgcodecs.imread("./image.jpg");
-
-	    if (image.empty()) {
-	        System.out.println("Calibration image not found");
-	        return;
-	    }
-
-	    // Draw blue circle for token
-	    int tokenRadius = (int) ImageHandler.getTokenRadius();
-	    Point tokenCenter = new Point(image.width() / 2, image.height() / 2);
-	    Imgproc.circle(image, tokenCenter, tokenRadius, new Scalar(255, 0, 0), 3);
-
-	    // Draw red circle for target
-	    int targetRadius = (int) ImageHandler.getTargetRadius();
-	    Point targetCenter = new Point(image.width() / 2, image.height() / 2);
-	    Imgproc.circle(image, targetCenter, targetRadius, new Scalar(0, 0, 255), 3);
-
-	    // Convert Mat to WritableImage format
-	    WritableImage writableImage = new WritableImage(image.width(), image.height());
-	    PixelWriter pixelWriter = writableImage.getPixelWriter();
-
-	    for (int y = 0; y < image.height(); y++) {
-	        for (int x = 0; x < image.width(); x++) {
-	            double[] data = image.get(y, x);
-	            Color color = Color.rgb((int) data[2], (int) data[1], (int) data[0]);
-	            pixelWriter.setColor(x, y, color);
-	        }
-	    }
-
-	    // Update background with new image
-	    BackgroundSize backgroundSize = new BackgroundSize(100, 100, true, true, true, false);
-	    BackgroundImage backgroundImage = new BackgroundImage(writableImage, BackgroundRepeat.NO_REPEAT,
-	            BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER, backgroundSize);
-	    imagePane.setBackground(new Background(backgroundImage));
+		vision.submit(() -> {
+			Mat image = FrameBus.getInstance().getLatestFrame();
+
+			if (image == null || image.empty()) {
+				// Every tick until the camera delivers a frame
+				logger.fine("Calibration image not found");
+				return false;
+			}
+
+			// Draw blue circle for token
+			int tokenRadius = (int) ImageHandler.getTokenRadius();
+			Point tokenCenter = new Point(image.width() / 2, image.height() / 2);
+			Imgproc.circle(image, tokenCenter, tokenRadius, new Scalar(255, 0, 0), 3);
+
+			// Draw red circle for target
+			int targetRadius = (int) ImageHandler.getTargetRadius();
+			Point targetCenter = new Point(image.width() / 2, image.height() / 2);
+			Imgproc.circle(image, targetCenter, targetRadius, new Scalar(0, 0, 255), 3);
+
+			// Pack the frame here, only the pixel copy is left to the JavaFX thread
+			converter.pack(image);
+			image.release();
+			return true;
+		}, packed -> {
+			if (!packed) {
+				return;
+			}
+			// Convert to WritableImage format, reusing the previous image
+			WritableImage writableImage = converter.toImage();
+
+			// Update background only when the image instance changed
+			if (writableImage != previewImage) {
+				previewImage = writableImage;
+				BackgroundSize backgroundSize = new BackgroundSize(100, 100, true, true, true, false);
+				BackgroundImage backgroundImage = new BackgroundImage(writableImage, BackgroundRepeat.NO_REPEAT,
+						BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER, backgroundSize);
+				imagePane.setBackground(new Background(backgroundImage));
+			}
+		});
 	}
 
 	/**
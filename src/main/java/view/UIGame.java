@@ -10,20 +10,26 @@ import javafx.scene.control.Button;
 import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import org.opencv.core.Mat;
-import org.opencv.imgcodecs.Imgcodecs;
 
 import javafx.util.Duration;
+import logic.Board;
+import logic.DetectionPipeline;
+import logic.FrameBus;
+import logic.FrameResult;
 import logic.Gameplay;
 import logic.ImageHandler;
+import logic.Metrics;
+import logic.SessionRecorder;
+import logic.TurnController;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,8 +38,7 @@ import java.util.logging.Logger;
  * Handles real-time camera feed, token placement detection, score tracking,
  * and game state management.
  */
-public class UIGame extends Application {
-	private boolean endOfTurn = false;
+public class UIGame extends Application implements TurnController.Listener {
 	private Pane centralPane;
 	private Text scoreText1;
 	private Text scoreText2;
@@ -42,13 +47,16 @@ public class UIGame extends Application {
 	private static ImageHandler handler;
 	private Gameplay gameplay;
 	private Timeline timeline;
-	private Timeline checkEndTurn;
+	private DetectionPipeline pipeline;
+	private final VisionService vision = new VisionService();
 	private Stage primaryStage;
-	private int[] lastPosition;
-	private int counterCheck;
-	private int maxCheck;
-	private int rounds;
+	private TurnController turns;
+	private final MatImageConverter converter = new MatImageConverter();
+	private WritableImage previewImage;
+	private SessionRecorder recorder;
 	private static final Logger logger = Logger.getLogger(UIMenu.class.getName());
+	private static final Metrics.Histogram packTime = Metrics.getInstance().histogram("render.pack");
+	private static final Metrics.Histogram repaintTime = Metrics.getInstance().histogram("render.repaint");
 
 	/**
 	 * Initializes and starts the game interface with webcam feed and UI components.
@@ -65,21 +73,30 @@ public class UIGame extends Application {
 			primaryStage.setTitle("Game - UI");
 			primaryStage.setScene(scene);
 			primaryStage.show();
-	
-			lastPosition = null;
-			counterCheck = 0;
-			maxCheck = 15;
-	
-			gameplay = new Gameplay();
-			rounds = gameplay.getCurrentRound();
-			// Create a timeline for updating the background
-			timeline = new Timeline(new KeyFrame(Duration.millis(300), event -> updateBackground()));
+
+			// Pick up the match left unfinished, after a crash or the calibration screen
+			gameplay = Gameplay.resumeMatch();
+			if (gameplay == null) {
+				gameplay = Gameplay.newMatch();
+			} else {
+				updateTextScore();
+			}
+
+			// Record the session to replay it later, with -Dcurling.recordSessions=true
+			if (Boolean.getBoolean("curling.recordSessions")) {
+				startRecording();
+			}
+
+			// Detection runs on its own thread, the FX thread only paints its results
+			pipeline = new DetectionPipeline(FrameBus.getInstance(), handler);
+			pipeline.requestTarget();
+			pipeline.start();
+			turns = new TurnController(gameplay, pipeline, this);
+
+			// Create a timeline polling the detection results
+			timeline = new Timeline(new KeyFrame(Duration.millis(33), event -> onFrame()));
 			timeline.setCycleCount(Timeline.INDEFINITE); // Continuous update loop
 			timeline.play();
-	
-			// Initialize checkEndTurn but don't start it yet
-			checkEndTurn = new Timeline(new KeyFrame(Duration.millis(200), event -> checkTurn()));
-			checkEndTurn.setCycleCount(Timeline.INDEFINITE);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Exception in UIMenu", e);
 		}
@@ -210,104 +227,77 @@ public class UIGame extends Application {
 	 * @param btnStartGame The button that triggered the action
 	 */
 	private void startGame(Button btnStartGame) {
-		if (!checkEndTurn.getStatus().equals(Animation.Status.RUNNING)) {
-			checkEndTurn.play();
+		if (!turns.isActive()) {
+			turns.start();
 			instructionsText.setText("Placez jeton");
 		} else {
-			completeTurn();  
+			turns.completeTurn();
 		}
 	}
 
 	/**
-	 * Processes the end of a turn.
-	 * Updates game state, refreshes display, and prepares for next turn.
+	 * Shows that a stone is being placed.
+	 */
+	@Override
+	public void stoneMoving() {
+		instructionsText.setText("Placez jeton");
+	}
+
+	/**
+	 * Shows the advantage once the stone of the turn is at rest, and asks for
+	 * its removal.
+	 *
+	 * @param turn      Turn of the stone
+	 * @param advantage Player who has the advantage, or Gameplay.TOO_CLOSE_TO_CALL
+	 */
+	@Override
+	public void stoneSettled(int turn, int advantage) {
+		UpdateTextScoreRound(turn, advantage);
+		instructionsText.setText("Retirez jeton");
+	}
+
+	/**
+	 * Refreshes the display at the end of a turn and prepares for the next one.
+	 *
+	 * @param roundEnded true if a new round starts or the game is over
 	 */
-	private void completeTurn() {  
-		gameplay.endTurn();
-		if (gameplay.getCurrentRound() != rounds) {
-			if (scoreTextArea != null) {
-				scoreTextArea.clear();
-	    	}
-			rounds = gameplay.getCurrentRound(); 
+	@Override
+	public void turnCompleted(boolean roundEnded) {
+		if (roundEnded && scoreTextArea != null) {
+			scoreTextArea.clear();
 		}
 		if (gameplay.getTargetPosition() != null) {
-			updateBackground();
 			updateTextScore();
 			checkEndGame();
 			instructionsText.setText("Placez jeton");
 		}
-	
 	}
 
 	/**
-	 * Monitors token stability and position.
-	 * Checks if a token has remained stationary long enough to be considered placed.
+	 * Handles the newest detection result, if any.
+	 * Runs the turn logic on it when a game is in progress, then paints it.
 	 */
-	private void checkTurn() {
-		int[] actualPosition = gameplay.checkToken();
-		if (this.lastPosition == null && !endOfTurn) {
-			this.lastPosition = actualPosition;
-			Mat image = Imgcodecs.imread("./image.jpg");
-
-			gameplay.findTarget(image);    // Changed from trouverCible
-			gameplay.findToken(image);     // Changed from trouverJeton
-			gameplay.displayTokens();      // Changed from afficherJetons
-			instructionsText.setText("Placez jeton");
-		}
-		if (checkPositionToken(this.lastPosition, actualPosition) && actualPosition != null && !endOfTurn) {
-			System.out.println("Check count: " + String.valueOf(this.counterCheck));  // Changed from "Nombre de check"
-			if (this.counterCheck == this.maxCheck) {
-				endOfTurn = true;
-				Mat image = Imgcodecs.imread("./image.jpg");
-				gameplay.findTarget(image);    // Changed method names to match updated Gameplay class
-				gameplay.findToken(image);
-				int turnNumber = gameplay.getCurrentTurn();
-				int advantage = gameplay.getAdvantage();
-				UpdateTextScoreRound(turnNumber, advantage);
-				instructionsText.setText("Retirez jeton");
-			} else {
-				this.counterCheck += 1;
-			}
-		} else {
-			this.lastPosition = actualPosition;
-		}
-		if (actualPosition == null && endOfTurn) {
-			this.counterCheck = 0;
-			this.lastPosition = null;
-			endOfTurn = false;
-			completeTurn();  
+	private void onFrame() {
+		FrameResult result = pipeline.takeResult();
+		if (result == null) {
+			return;
 		}
-	}
-
-	/**
-	 * Validates token position stability.
-	 * Compares current and previous positions to determine if token has settled.
-	 *
-	 * @param lastPosition Previous token position
-	 * @param actualPosition Current token position
-	 * @return true if token position is stable, false otherwise
-	 */
-	private boolean checkPositionToken(int[] lastPosition, int[] actualPosition) {
-		if (lastPosition == null || actualPosition == null) {
-			return false;
-		} else {
-			if (lastPosition[0] - 4 < actualPosition[0] && actualPosition[0] < lastPosition[0] + 4) {
-				if (lastPosition[1] - 4 < actualPosition[1] && actualPosition[1] < lastPosition[1] + 4) {
-					return true;
-				}
-			}
+		turns.onResult(result);
+		if (gameplay == null || !updateBackground(result)) {
+			result.release();
 		}
-		return false;
 	}
 
 	/**
 	 * Update the text for Advantage on the right-screen
 	 * @param turnNumber Turn Number
-	 * @param advantage Player who has the advantage
+	 * @param advantage Player who has the advantage, or Gameplay.TOO_CLOSE_TO_CALL
 	 */
 	private void UpdateTextScoreRound(int turnNumber, int advantage) {
     if (scoreTextArea != null) {
-      String newLine = "Tour " + (turnNumber + 1) + " : J" + (advantage == 0 ? "1 " : "2 ") + " en tête";
+      String newLine = "Tour " + (turnNumber + 1) + " : "
+          + (advantage == Gameplay.TOO_CLOSE_TO_CALL ? "trop serré"
+              : "J" + (advantage == 0 ? "1 " : "2 ") + " en tête");
       scoreTextArea.appendText(newLine + "\n");
     }
 	}
@@ -338,79 +328,153 @@ public class UIGame extends Application {
 
 	/**
 	 * Updates the game board visualization.
-	 * Processes camera feed and draws current game state including tokens and target.
+	 * Takes a snapshot of the game state on the JavaFX thread, then draws the
+	 * tokens and target on the frame of a detection result and packs it on a
+	 * vision worker; only the final pixel copy runs on the JavaFX thread.
+	 *
+	 * @param result Detection result whose frame is painted, released by the worker
+	 * @return true if the frame was handed to the worker, false if it is still busy
 	 */
-	private void updateBackground() {
-		Mat image = Imgcodecs.imread("./image.jpg");
-
-		// Check if image is valid and has correct dimensions
-		if (image == null || image.empty() || image.width() <= 0 || image.height() <= 0) {
-			System.out.println("Invalid image or incorrect dimensions");
-			return;
-		}
-
+	private boolean updateBackground(FrameResult result) {
+		int[] targetPosition = null;
+		int[][] tokenPositions = new int[0][];
+		int[] players = new int[0];
 		if (gameplay.getTargetPosition() != null) {
 			if (ImageHandler.getTargetStyle() == 2) {
-				int[] targetPosition = gameplay.getTargetPosition();
-				ImageHandler.drawTarget(image, targetPosition);
+				targetPosition = gameplay.getTargetPosition().clone();
 			}
-			for (int k = 0; k < gameplay.getTokens().length; k++) {
-				int[] tokenPosition = gameplay.getTokens()[k].getPosition();
-				int player = gameplay.getTokens()[k].getPlayer();
-
-				if (tokenPosition[0] != 0) {
-					if (player == 0) {
-						if (ImageHandler.getTokenStyle() == 1) {
-							ImageHandler.drawTokenPlayer2(image, tokenPosition);
-						} else {
-							ImageHandler.drawBlueCircle(image, tokenPosition);
-						}
+			Board board = gameplay.getBoard();
+			tokenPositions = new int[board.size()][];
+			players = new int[tokenPositions.length];
+			for (int k = 0; k < tokenPositions.length; k++) {
+				tokenPositions[k] = board.getPosition(k);
+				players[k] = board.getPlayer(k);
+			}
+		}
+		int[] target = targetPosition;
+		int[][] positions = tokenPositions;
+		int[] owners = players;
+		return vision.submit(() -> {
+			Mat image = result.getFrame();
+			try {
+				// Check if image is valid and has correct dimensions
+				if (image.empty() || image.width() <= 0 || image.height() <= 0) {
+					logger.warning("Invalid image or incorrect dimensions");
+					return false;
+				}
+				long start = System.nanoTime();
+				drawBoard(image, target, positions, owners);
+				converter.pack(image);
+				packTime.recordSince(start);
+				return true;
+			} finally {
+				result.release();
+			}
+		}, packed -> {
+			if (packed) {
+				long start = System.nanoTime();
+				paintPreview();
+				repaintTime.recordSince(start);
+				pipeline.recordPainted(result);
+			}
+		});
+	}
+
+	/**
+	 * Draws the virtual target and the tokens of the board on a frame.
+	 *
+	 * @param image          Frame to draw on
+	 * @param targetPosition Target to draw, or null to leave the real target visible
+	 * @param tokenPositions Position of each token, [0,0] if not played
+	 * @param players        Player owning each token
+	 */
+	private static void drawBoard(Mat image, int[] targetPosition, int[][] tokenPositions, int[] players) {
+		if (targetPosition != null) {
+			ImageHandler.drawTarget(image, targetPosition);
+		}
+		for (int k = 0; k < tokenPositions.length; k++) {
+			int[] tokenPosition = tokenPositions[k];
+			if (tokenPosition[0] != 0) {
+				if (players[k] == 0) {
+					if (ImageHandler.getTokenStyle() == 1) {
+						ImageHandler.drawTokenPlayer2(image, tokenPosition);
 					} else {
-						if (ImageHandler.getTokenStyle() == 1) {
-							ImageHandler.drawTokenPlayer1(image, tokenPosition);
-						} else {
-							ImageHandler.drawRedCircle(image, tokenPosition);
-						}
+						ImageHandler.drawBlueCircle(image, tokenPosition);
+					}
+				} else {
+					if (ImageHandler.getTokenStyle() == 1) {
+						ImageHandler.drawTokenPlayer1(image, tokenPosition);
+					} else {
+						ImageHandler.drawRedCircle(image, tokenPosition);
 					}
 				}
 			}
 		}
+	}
 
-		// Create WritableImage only if dimensions are valid
-		WritableImage writableImage = new WritableImage(image.width(), image.height());
-		PixelWriter pixelWriter = writableImage.getPixelWriter();
-
-		for (int y = 0; y < image.height(); y++) {
-			for (int x = 0; x < image.width(); x++) {
-				double[] data = image.get(y, x);
-				Color color = Color.rgb((int) data[2], (int) data[1], (int) data[0]);
-				pixelWriter.setColor(x, y, color);
-			}
+	/**
+	 * Copies the last packed frame into the preview image.
+	 * Must be called on the JavaFX application thread.
+	 */
+	private void paintPreview() {
+		// Copy the frame into the reused preview image in one pass
+		WritableImage writableImage = converter.toImage();
+		if (writableImage != previewImage) {
+			previewImage = writableImage;
+			BackgroundSize backgroundSize = new BackgroundSize(100, 100, true, true, true, false);
+			BackgroundImage backgroundImage = new BackgroundImage(writableImage, BackgroundRepeat.NO_REPEAT,
+					BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER, backgroundSize);
+			centralPane.setBackground(new Background(backgroundImage));
 		}
-		BackgroundSize backgroundSize = new BackgroundSize(100, 100, true, true, true, false);
-		BackgroundImage backgroundImage = new BackgroundImage(writableImage, BackgroundRepeat.NO_REPEAT,
-				BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER, backgroundSize);
-		centralPane.setBackground(new Background(backgroundImage));
 	}
 
 	/**
 	 * Manages game pause functionality.
-	 * Toggles pause state for all game timelines and updates button text.
+	 * Toggles pause state of the game timeline, which also pauses turn control,
+	 * and updates button text.
 	 *
 	 * @param btnPause Button used to toggle pause state
 	 */
 	private void togglePause(Button btnPause) {
     if (timeline.getStatus() == Animation.Status.RUNNING) {
       timeline.pause();
-      checkEndTurn.pause(); // Also pause turn control when needed
       btnPause.setText("Reprendre");
     } else {
       timeline.play();
-      checkEndTurn.play();
       btnPause.setText("Pause");
     }
 	}
 
+	/**
+	 * Records the camera frames and the detection results of the session
+	 * in the sessions directory.
+	 */
+	private void startRecording() {
+		try {
+			recorder = SessionRecorder.newSession(Paths.get("sessions"));
+			FrameBus.getInstance().setRecorder(recorder);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unable to record the session", e);
+		}
+	}
+
+	/**
+	 * Stops the game timeline, the detection pipeline, the vision jobs and
+	 * the session recording before leaving the screen. Logs the pipeline
+	 * statistics of the session.
+	 */
+	private void stopGameLoop() {
+		this.timeline.stop();
+		vision.close();
+		pipeline.close();
+		logger.info(pipeline.toString());
+		if (recorder != null) {
+			FrameBus.getInstance().setRecorder(null);
+			recorder.close();
+			recorder = null;
+		}
+	}
+
 	/**
 	 * Checks if the current turn is ending.
 	 * Getter for the endOfTurn flag indicating if current turn is complete.
@@ -418,7 +482,7 @@ public class UIGame extends Application {
 	 * @return true if turn is ending, false otherwise
 	 */
 	public boolean isEndOfTurn() {
-		return endOfTurn;
+		return turns != null && turns.isEndOfTurn();
 	}
 
 	/**
@@ -443,26 +507,27 @@ public class UIGame extends Application {
 
 	/**
 	 * Returns to the main menu.
-	 * Stops all game processes and transitions to menu screen.
+	 * Stops all game processes, gives up the match and transitions to menu screen.
 	 *
 	 * @param primaryStage The primary stage for UI display
 	 */
 	private void openUIMenu(Stage primaryStage) {
-		this.timeline.stop();
-		this.checkEndTurn.stop();
+		stopGameLoop();
+		gameplay.abandon();
 		UIMenu uiMenu = new UIMenu();
 		uiMenu.start(primaryStage);
 	}
 
 	/**
 	 * Transitions to the calibration interface.
-	 * Stops current game timelines and opens calibration screen.
+	 * Stops current game timelines and opens calibration screen. The match is
+	 * kept in its journal and resumed when coming back to the game.
 	 *
 	 * @param primaryStage The primary stage for UI display
 	 */
 	private void openUIEtalonnage(Stage primaryStage) {
-		this.timeline.stop();
-		this.checkEndTurn.stop();
+		stopGameLoop();
+		gameplay.closeJournal();
 		UIEtalonnage uiEtalonnage = new UIEtalonnage();
 		uiEtalonnage.start(primaryStage);
 	}
@@ -476,8 +541,7 @@ public class UIGame extends Application {
 	 * @param score2 Final score for player 2
 	 */
 	private void openUIWinner(Stage primaryStage, int score1, int score2) {
-		this.timeline.stop();
-		this.checkEndTurn.stop();
+		stopGameLoop();
 		gameplay = null;
 		UIWinner uiWinner = new UIWinner(score1, score2);
 		uiWinner.start(primaryStage);
@@ -0,0 +1,106 @@
+package view;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+
+/**
+ * Runs the OpenCV work of a screen off the JavaFX application thread.
+ * Jobs run on a small pool of worker threads shared by all screens, and their
+ * results are handed back to the JavaFX thread with {@link Platform#runLater}.
+ * Each screen owns its own service, which keeps at most one frame job in
+ * flight: a frame submitted while the previous one is still being processed
+ * is refused rather than queued.
+ */
+public class VisionService implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(VisionService.class.getName());
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static final ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+		Thread thread = new Thread(runnable, "vision-worker-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicBoolean inFlight = new AtomicBoolean();
+	private volatile boolean closed;
+
+	/**
+	 * Runs a job on a worker thread, unless a job of this service is still in flight.
+	 * The result is passed to the callback on the JavaFX thread; nothing is
+	 * delivered once the service is closed.
+	 *
+	 * @param <T>      Type of the result
+	 * @param job      Work to run outside the JavaFX thread
+	 * @param onResult Callback receiving the result on the JavaFX thread
+	 * @return true if the job was accepted, false if it was refused
+	 */
+	public <T> boolean submit(Supplier<T> job, Consumer<T> onResult) {
+		if (closed || !inFlight.compareAndSet(false, true)) {
+			return false;
+		}
+		executor.execute(() -> {
+			T result;
+			try {
+				result = job.get();
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "Error in vision job", e);
+				inFlight.set(false);
+				return;
+			}
+			Platform.runLater(() -> {
+				// Released only once the result is consumed, so callbacks never overlap
+				try {
+					if (!closed) {
+						onResult.accept(result);
+					}
+				} finally {
+					inFlight.set(false);
+				}
+			});
+		});
+		return true;
+	}
+
+	/**
+	 * Runs a long operation on a worker thread.
+	 * Progress, messages and completion of the task are reported on the
+	 * JavaFX thread by the {@link Task} itself.
+	 *
+	 * @param task Task to run
+	 */
+	public void execute(Task<?> task) {
+		if (closed) {
+			return;
+		}
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED,
+				e -> logger.log(Level.SEVERE, "Error in vision task", task.getException()));
+		executor.execute(task);
+	}
+
+	/**
+	 * Checks whether a frame job is currently in flight.
+	 *
+	 * @return true if a job was accepted and its result not yet delivered
+	 */
+	public boolean isBusy() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Stops delivering results to the screen.
+	 * Jobs already running finish on their worker thread, their results are discarded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+}